@@ -66,23 +66,25 @@ class CacheRepositoryImpl(
     }
 
     private fun buildCacheState(): CacheRepository.CacheState {
+        val summary = cache.summary()
         val stats = CacheStats(
-            cacheSize = cache.cacheSize,
-            usedSpace = cache.usedSpace,
-            freeSpace = cache.freeSpace,
-            journalSize = cache.journalSize,
-            filesCount = cache.keySet().size
+            cacheSize = summary.cacheSize,
+            usedSpace = summary.usedSpace,
+            freeSpace = summary.freeSpace,
+            journalSize = summary.journalSize,
+            filesCount = summary.entryCount
         )
 
-        // Use the new API to get records sorted by LRU order
-        val recordsInfo = cache.recordsInfo
-        
+        // Only the most recently used records are shown, so the whole cache is not copied on refresh
+        val recordsInfo = cache.getRecordsInfo(null, MAX_SHOWN_FILES)
+        val filesCount = stats.filesCount
+
         val files = recordsInfo.mapIndexed { index, info ->
             val file = File(tempDir, info.fileName)
             val priority = when {
-                recordsInfo.size <= 1 -> CachedFile.Priority.HIGH
-                index < recordsInfo.size / 3 -> CachedFile.Priority.HIGH
-                index < recordsInfo.size * 2 / 3 -> CachedFile.Priority.MEDIUM
+                filesCount <= 1 -> CachedFile.Priority.HIGH
+                index < filesCount / 3 -> CachedFile.Priority.HIGH
+                index < filesCount * 2 / 3 -> CachedFile.Priority.MEDIUM
                 else -> CachedFile.Priority.LOW
             }
             CachedFile(
@@ -99,4 +101,8 @@ class CacheRepositoryImpl(
             files = files
         )
     }
+
+    private companion object {
+        const val MAX_SHOWN_FILES = 200
+    }
 }
@@ -0,0 +1,58 @@
+package com.tomclaw.cache;
+
+import java.io.File;
+
+/**
+ * Cache size limit, that follows usable space of file system.
+ * Limit is kept between min and max sizes, leaving reserve of usable space free.
+ */
+class AdaptiveSize {
+
+    private final File dir;
+    private final long minSize;
+    private final long maxSize;
+    private final long reserve;
+    private final long interval;
+    private long limit;
+    private long sampleTime;
+
+    AdaptiveSize(File dir, long minSize, long maxSize, long reserve, long interval) {
+        this.dir = dir;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.reserve = reserve;
+        this.interval = interval;
+        this.limit = maxSize;
+        this.sampleTime = Long.MIN_VALUE;
+    }
+
+    /**
+     * Samples usable space, if sampling interval passed since previous sample.
+     *
+     * @param usedSpace space, used by cache now
+     * @return true if limit changed
+     */
+    public boolean sample(long usedSpace) {
+        long time = System.currentTimeMillis();
+        if (sampleTime != Long.MIN_VALUE && time - sampleTime < interval) {
+            return false;
+        }
+        sampleTime = time;
+        long usableSpace = dir.getUsableSpace();
+        if (usableSpace <= 0) {
+            // Usable space is unknown
+            return false;
+        }
+        long value = Math.max(minSize, Math.min(maxSize, usedSpace + usableSpace - reserve));
+        if (value == limit) {
+            return false;
+        }
+        limit = value;
+        return true;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+}
@@ -0,0 +1,205 @@
+package com.tomclaw.cache;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous facade of {@link DiskLruCache}. All operations are executed on
+ * the specified executor, so calling thread never waits for disk I/O.
+ * Count of pending operations is bounded: operation, that exceeds the limit,
+ * is rejected immediately with {@link RejectedExecutionException}.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class AsyncDiskLruCache {
+
+    public static final int DEFAULT_MAX_PENDING = 1024;
+    public static final int DEFAULT_THREADS_COUNT = 4;
+
+    private final DiskLruCache cache;
+    private final Executor executor;
+    private final ExecutorService ownExecutor;
+    private final Semaphore permits;
+
+    /**
+     * Creates facade with own executor. Virtual threads are used, if available.
+     */
+    public AsyncDiskLruCache(DiskLruCache cache) {
+        this(cache, createExecutor(), DEFAULT_MAX_PENDING, true);
+    }
+
+    public AsyncDiskLruCache(DiskLruCache cache, Executor executor, int maxPending) {
+        this(cache, executor, maxPending, false);
+    }
+
+    private AsyncDiskLruCache(DiskLruCache cache, Executor executor, int maxPending, boolean ownExecutor) {
+        if (cache == null) {
+            throw new IllegalArgumentException("Cache must not be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor must not be null");
+        }
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("Max pending operations count must be positive");
+        }
+        this.cache = cache;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor ? (ExecutorService) executor : null;
+        this.permits = new Semaphore(maxPending);
+    }
+
+    public DiskLruCache getCache() {
+        return cache;
+    }
+
+    public Future<File> putAsync(String key, File file) {
+        return putAsync(key, file, null);
+    }
+
+    public Future<File> putAsync(final String key, final File file, Callback<File> callback) {
+        return submit(new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                return cache.put(key, file);
+            }
+        }, callback);
+    }
+
+    public Future<File> getAsync(String key) {
+        return getAsync(key, (Callback<File>) null);
+    }
+
+    public Future<File> getAsync(final String key, Callback<File> callback) {
+        return submit(new Callable<File>() {
+            @Override
+            public File call() {
+                return cache.get(key);
+            }
+        }, callback);
+    }
+
+    public Future<File> getAsync(final String key, final Loader loader, Callback<File> callback) {
+        return submit(new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                return cache.get(key, loader);
+            }
+        }, callback);
+    }
+
+    public Future<Void> deleteAsync(String key) {
+        return deleteAsync(key, null);
+    }
+
+    public Future<Void> deleteAsync(final String key, Callback<Void> callback) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                cache.delete(key);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * Returns count of operations, that may be submitted before rejection.
+     */
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * Shuts down own executor. Executor, passed to constructor, is not affected.
+     */
+    public void shutdown() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    private <T> Future<T> submit(Callable<T> callable, Callback<T> callback) {
+        Task<T> task = new Task<>(callable, callback);
+        if (!permits.tryAcquire()) {
+            task.fail(new RejectedExecutionException("Too many pending operations"));
+            return task;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            permits.release();
+            task.fail(ex);
+        }
+        return task;
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception ignored) {
+        }
+        return Executors.newFixedThreadPool(DEFAULT_THREADS_COUNT, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "disk-lru-cache-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private class Task<T> extends FutureTask<T> {
+
+        private final Callback<T> callback;
+
+        Task(Callable<T> callable, Callback<T> callback) {
+            super(callable);
+            this.callback = callback;
+        }
+
+        void fail(Throwable error) {
+            setException(error);
+        }
+
+        /**
+         * Releases permit, when task leaves executor. Cancelled task holds permit
+         * until its callable returns, so cancelled work is still limited.
+         */
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                permits.release();
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (callback == null || isCancelled()) {
+                return;
+            }
+            try {
+                callback.onSuccess(get());
+            } catch (ExecutionException ex) {
+                callback.onFailure(ex.getCause());
+            } catch (InterruptedException ex) {
+                callback.onFailure(ex);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.tomclaw.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of cached keys, that tells whether key is definitely absent.
+ * Keys are added by single writer under journal lock, while lookups may be
+ * performed concurrently without locking. Keys can't be removed, so filter
+ * is rebuilt, when it is saturated or holds too many deleted keys.
+ */
+class BloomFilter {
+
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASH_COUNT = 7;
+    private static final int MIN_CAPACITY = 64;
+
+    private final AtomicLongArray words;
+    private final int bitCount;
+    private final int capacity;
+    private int count = 0;
+
+    BloomFilter(int capacity) {
+        this.capacity = Math.max(capacity, MIN_CAPACITY);
+        long bits = Math.min((long) this.capacity * BITS_PER_KEY, Integer.MAX_VALUE);
+        this.words = new AtomicLongArray((int) ((bits + 63) / 64));
+        this.bitCount = words.length() * 64;
+    }
+
+    public void add(String key) {
+        int hash1 = key.hashCode();
+        int hash2 = secondHash(key);
+        for (int c = 0; c < HASH_COUNT; c++) {
+            int bit = index(hash1 + c * hash2);
+            int word = bit >>> 6;
+            // Filter has single writer, so bits are not lost without compare and set
+            words.set(word, words.get(word) | (1L << bit));
+        }
+        count++;
+    }
+
+    /**
+     * Returns false if key was definitely not added, and true if it might be added.
+     */
+    public boolean mightContain(String key) {
+        int hash1 = key.hashCode();
+        int hash2 = secondHash(key);
+        for (int c = 0; c < HASH_COUNT; c++) {
+            int bit = index(hash1 + c * hash2);
+            if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if more keys are added than filter is sized for,
+     * so false positive rate grows above designed one.
+     */
+    public boolean isSaturated() {
+        return count > capacity;
+    }
+
+    private int index(int hash) {
+        return (hash & Integer.MAX_VALUE) % bitCount;
+    }
+
+    /**
+     * FNV-1a hash of key, which is independent of {@link String#hashCode()}.
+     */
+    private static int secondHash(String key) {
+        int hash = 0x811c9dc5;
+        for (int c = 0; c < key.length(); c++) {
+            hash ^= key.charAt(c);
+            hash *= 0x01000193;
+        }
+        return hash | 1;
+    }
+
+}
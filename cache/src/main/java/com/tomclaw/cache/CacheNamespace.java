@@ -0,0 +1,146 @@
+package com.tomclaw.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Isolated key space within cache. Namespaces share cache size, but eviction
+ * keeps each of them within its share, defined by weight or soft quota,
+ * so one namespace can't wipe out others.
+ */
+@SuppressWarnings("unused")
+public class CacheNamespace {
+
+    private final DiskLruCache cache;
+    private final String name;
+
+    CacheNamespace(DiskLruCache cache, String name) {
+        this.cache = cache;
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public File put(String key, File file) throws IOException {
+        return cache.put(key(key), file);
+    }
+
+    public File putBytes(String key, ByteBuffer data) throws IOException {
+        return cache.putBytes(key(key), data);
+    }
+
+    public File get(String key) {
+        return cache.get(key(key));
+    }
+
+    public File get(String key, final Loader loader) throws IOException {
+        if (loader == null) {
+            throw new IllegalArgumentException("Loader must not be null");
+        }
+        final String localKey = key;
+        return cache.get(key(key), new Loader() {
+            @Override
+            public File load(String key) throws IOException {
+                return loader.load(localKey);
+            }
+        });
+    }
+
+    public ByteBuffer getBytes(String key) throws IOException {
+        return cache.getBytes(key(key));
+    }
+
+    public InputStream openStream(String key) throws IOException {
+        return cache.openStream(key(key));
+    }
+
+    public void delete(String key) throws IOException, RecordNotFoundException {
+        cache.delete(key(key));
+    }
+
+    /**
+     * Returns snapshot of keys in this namespace.
+     */
+    public Set<String> keySet() {
+        return cache.keySet(name);
+    }
+
+    /**
+     * Returns snapshot of keys in this namespace, that start with specified prefix.
+     */
+    public Set<String> keysWithPrefix(String prefix) {
+        return cache.keysWithPrefix(name, prefix);
+    }
+
+    /**
+     * Returns iterator over keys in this namespace, that start with specified prefix.
+     * Keys are fetched in batches.
+     */
+    public Iterator<String> keyIterator(String prefix) {
+        return cache.keyIterator(name, prefix);
+    }
+
+    /**
+     * Deletes all records of this namespace, which keys start with specified prefix.
+     *
+     * @return count of deleted records
+     */
+    public int deleteByPrefix(String prefix) throws IOException {
+        return cache.deleteByPrefix(name, prefix);
+    }
+
+    /**
+     * Deletes all records of this namespace.
+     *
+     * @return count of deleted records
+     */
+    public int clear() throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (String key : keySet()) {
+            keys.add(key(key));
+        }
+        return cache.deleteAll(keys);
+    }
+
+    /**
+     * Returns total size of records in this namespace.
+     */
+    public long getUsedSpace() {
+        return cache.getNamespaceSize(name);
+    }
+
+    /**
+     * Sets weight of namespace. When cache is full, space is shared between
+     * namespaces in proportion to their weights. Default weight is 1.
+     */
+    public void setWeight(int weight) {
+        cache.setNamespaceWeight(name, weight);
+    }
+
+    /**
+     * Sets soft quota of namespace. Namespace may exceed its quota while cache has free space,
+     * but its records are evicted first when space is needed.
+     *
+     * @param quota quota in bytes or negative value to share space by weight
+     */
+    public void setQuota(long quota) {
+        cache.setNamespaceQuota(name, quota);
+    }
+
+    private String key(String key) {
+        if (key == null || key.isEmpty() || key.indexOf(Record.NAMESPACE_SEPARATOR) != -1
+                || key.indexOf(Record.CHUNK_SEPARATOR) != -1) {
+            throw new IllegalArgumentException(String.format("Invalid key value: '%s'", key));
+        }
+        return Record.namespacedKey(name, key);
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.tomclaw.cache;
+
+/**
+ * Snapshot of cache state, that is published after each cache operation,
+ * so it may be polled frequently without locking.
+ */
+@SuppressWarnings("unused")
+public class CacheSummary {
+
+    private final int entryCount;
+    private final long usedSpace;
+    private final long cacheSize;
+    private final long journalSize;
+    private final long oldestAccessTime;
+
+    CacheSummary(int entryCount, long usedSpace, long cacheSize, long journalSize, long oldestAccessTime) {
+        this.entryCount = entryCount;
+        this.usedSpace = usedSpace;
+        this.cacheSize = cacheSize;
+        this.journalSize = journalSize;
+        this.oldestAccessTime = oldestAccessTime;
+    }
+
+    /**
+     * Returns count of cached records, including records of namespaces and chunks of entries.
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public long getUsedSpace() {
+        return usedSpace;
+    }
+
+    public long getFreeSpace() {
+        return cacheSize - usedSpace;
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public long getJournalSize() {
+        return journalSize;
+    }
+
+    /**
+     * Returns access time of the least recently used record or 0 if cache is empty.
+     */
+    public long getOldestAccessTime() {
+        return oldestAccessTime;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheSummary{" +
+                "entryCount=" + entryCount +
+                ", usedSpace=" + usedSpace +
+                ", cacheSize=" + cacheSize +
+                ", journalSize=" + journalSize +
+                ", oldestAccessTime=" + oldestAccessTime +
+                '}';
+    }
+}
@@ -0,0 +1,102 @@
+package com.tomclaw.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Read-only handle of cached file, backed by pooled channel. Handle must be closed
+ * after use, but underlying channel stays open for further reads of the same file.
+ * File contents remain readable by open handle, even if file is evicted meanwhile.
+ */
+@SuppressWarnings("unused")
+public class CachedChannel implements Closeable {
+
+    private final ChannelPool pool;
+    private final ChannelPool.Entry entry;
+    private final long offset;
+    private final long length;
+    private boolean closed = false;
+
+    CachedChannel(ChannelPool pool, ChannelPool.Entry entry) {
+        this(pool, entry, 0, -1);
+    }
+
+    /**
+     * Creates handle of range of file, e.g. of entry, stored in segment.
+     *
+     * @param offset offset of range within file
+     * @param length length of range or -1 for the rest of file
+     */
+    CachedChannel(ChannelPool pool, ChannelPool.Entry entry, long offset, long length) {
+        this.pool = pool;
+        this.entry = entry;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Reads contents starting at specified position into buffer.
+     *
+     * @return count of bytes read or -1 if position is at or beyond end of file
+     */
+    public int read(ByteBuffer buffer, long position) throws IOException {
+        FileChannel channel = channel();
+        long remaining = size() - position;
+        if (remaining <= 0) {
+            return -1;
+        }
+        ByteBuffer target = buffer;
+        if (buffer.remaining() > remaining) {
+            target = buffer.duplicate();
+            target.limit(target.position() + (int) remaining);
+        }
+        int read = channel.read(target, offset + position);
+        if (target != buffer && read > 0) {
+            buffer.position(buffer.position() + read);
+        }
+        return read;
+    }
+
+    /**
+     * Transfers range of contents to target channel.
+     *
+     * @return count of bytes transferred, which is less than requested at end of file
+     */
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        FileChannel channel = channel();
+        long end = Math.min(size(), position + count);
+        long transferred = 0;
+        while (position + transferred < end) {
+            long result = channel.transferTo(offset + position + transferred,
+                    end - position - transferred, target);
+            if (result <= 0) {
+                break;
+            }
+            transferred += result;
+        }
+        return transferred;
+    }
+
+    public long size() throws IOException {
+        return length >= 0 ? length : channel().size() - offset;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            pool.release(entry);
+        }
+    }
+
+    private synchronized FileChannel channel() throws IOException {
+        if (closed) {
+            throw new IOException("Channel is closed");
+        }
+        return entry.channel;
+    }
+
+}
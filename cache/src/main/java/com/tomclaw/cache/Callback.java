@@ -0,0 +1,12 @@
+package com.tomclaw.cache;
+
+/**
+ * Receives result of asynchronous cache operation.
+ */
+public interface Callback<T> {
+
+    void onSuccess(T result);
+
+    void onFailure(Throwable error);
+
+}
@@ -0,0 +1,129 @@
+package com.tomclaw.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU pool of read-only channels of cached files, so repeated positional reads
+ * don't open and close file each time. Channels are pooled by file name and
+ * reference counted, so channel, that is removed from pool while in use,
+ * is closed when the last user releases it. Count of open channels, including
+ * ones in use, is limited to respect descriptors limit.
+ */
+class ChannelPool {
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxSize;
+    private int openCount = 0;
+
+    ChannelPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns pooled channel of file or opens new one. Returned entry must be released.
+     *
+     * @throws IOException if all channels are in use and no more channels may be opened
+     */
+    public synchronized Entry acquire(String name, File file) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            trim(maxSize - 1);
+            if (openCount >= maxSize) {
+                throw new IOException(String.format("Too many open channels: %d", openCount));
+            }
+            entry = new Entry(new RandomAccessFile(file, "r").getChannel());
+            entries.put(name, entry);
+            openCount++;
+        }
+        entry.refs++;
+        return entry;
+    }
+
+    public synchronized void release(Entry entry) {
+        entry.refs--;
+        if (entry.retired && entry.refs == 0) {
+            closeChannel(entry);
+        }
+    }
+
+    /**
+     * Removes channel from pool. Channel is closed, when it is not used anymore.
+     */
+    public synchronized void close(String name) {
+        Entry entry = entries.remove(name);
+        if (entry != null) {
+            retire(entry);
+        }
+    }
+
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            retire(entry);
+        }
+        entries.clear();
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        trim(maxSize);
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns count of open channels, including ones removed from pool, but still in use.
+     */
+    public synchronized int getOpenCount() {
+        return openCount;
+    }
+
+    /**
+     * Closes least recently used idle channels until count of open channels fits specified size.
+     */
+    private void trim(int size) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (openCount > size && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.refs == 0) {
+                iterator.remove();
+                retire(entry);
+            }
+        }
+    }
+
+    private void retire(Entry entry) {
+        entry.retired = true;
+        if (entry.refs == 0) {
+            closeChannel(entry);
+        }
+    }
+
+    private void closeChannel(Entry entry) {
+        try {
+            entry.channel.close();
+        } catch (IOException ignored) {
+        }
+        openCount--;
+    }
+
+    static class Entry {
+
+        final FileChannel channel;
+        int refs = 0;
+        boolean retired = false;
+
+        Entry(FileChannel channel) {
+            this.channel = channel;
+        }
+
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.tomclaw.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encoding applied to cached contents on write and reverted on read.
+ * Identifier is persisted in journal, so it must be unique and stable.
+ */
+public interface Codec {
+
+    /**
+     * Identifier of raw, not encoded contents.
+     */
+    int RAW = 0;
+
+    int getId();
+
+    OutputStream encode(OutputStream stream) throws IOException;
+
+    InputStream decode(InputStream stream) throws IOException;
+
+}
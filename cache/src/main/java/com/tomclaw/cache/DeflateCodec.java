@@ -0,0 +1,54 @@
+package com.tomclaw.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Codec compressing contents with Deflate algorithm.
+ * Slower than {@link LzfCodec}, but gives better compression ratio.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DeflateCodec implements Codec {
+
+    public static final int ID = 1;
+
+    private final int level;
+
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public DeflateCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public OutputStream encode(OutputStream stream) {
+        final Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(stream, deflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream decode(InputStream stream) {
+        return new InflaterInputStream(stream);
+    }
+
+}
@@ -1,32 +1,113 @@
 package com.tomclaw.cache;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
 
 @SuppressWarnings({"unused", "WeakerAccess", "UnusedReturnValue"})
-public class DiskLruCache {
+public class DiskLruCache implements Closeable {
 
     public static final Charset UTF_8 = StandardCharsets.UTF_8;
     public static final String HASH_ALGORITHM = "MD5";
+    public static final String CONTENT_HASH_ALGORITHM = "SHA-1";
+    public static final String LOCK_SUFFIX = ".lock";
+    public static final String TEMP_SUFFIX = ".tmp";
+    public static final float COMPRESSION_THRESHOLD = 0.9f;
+    public static final int EVICTION_BATCH_SIZE = 64;
+    public static final long ADAPTIVE_SIZE_SAMPLE_INTERVAL = 10000;
+    public static final int MAX_OPEN_FILES = 64;
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    public static final long SEGMENT_SIZE = 4 * 1024 * 1024;
+    public static final float COMPACTION_RATIO = 0.5f;
+    public static final int ITERATION_BATCH_SIZE = 256;
 
     private final Journal journal;
-    private final long cacheSize;
+    private long cacheSize;
     private final FileManager fileManager;
     private final Logger logger;
+    private final ProcessLock processLock;
+    private long generation;
+    private long lockedChangeCount;
+    private volatile boolean closed;
+    private int lockDepth;
+    private MemoryCache memoryCache;
+    private final ChannelPool channels = new ChannelPool(MAX_OPEN_FILES);
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private final PackedStore packedStore;
+    private long packThreshold = 0;
+    private Durability durability = Durability.NONE;
+    private long syncInterval;
+    private final Set<String> unsynced = new HashSet<>();
+    private Timer syncTimer;
+    private TimerTask syncTask;
+    private boolean checksums;
+    private final Set<String> verified = new HashSet<>();
+    private final Map<Integer, Codec> codecs = new HashMap<>();
+    private Codec codec;
+    private boolean deduplication;
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final Map<String, Long> negatives = new LinkedHashMap<>();
+    private long negativeCacheTime;
+    private Executor evictionExecutor;
+    private float highWatermark;
+    private float lowWatermark;
+    private final AtomicBoolean evictionScheduled = new AtomicBoolean();
+    private RemovalListener removalListener;
+    private Executor removalExecutor;
+    private final List<RemovalNotification> removals = new ArrayList<>();
+    private final AtomicBoolean removalScheduled = new AtomicBoolean();
+    private AdaptiveSize adaptiveSize;
+    private volatile CacheSummary summary;
 
-    private DiskLruCache(FileManager fileManager, Journal journal, Logger logger, long cacheSize) {
+    private DiskLruCache(FileManager fileManager, Journal journal, Logger logger, long cacheSize,
+                         ProcessLock processLock, long generation) {
         this.fileManager = fileManager;
         this.journal = journal;
         this.logger = logger;
         this.cacheSize = cacheSize;
+        this.processLock = processLock;
+        this.generation = generation;
+        this.packedStore = new PackedStore(fileManager, channels, logger, SEGMENT_SIZE, COMPACTION_RATIO);
+        packedStore.load(journal.getRecords());
+        registerCodec(new DeflateCodec());
+        registerCodec(new LzfCodec());
+        publishSummary();
     }
 
     public static DiskLruCache create(File cacheDir, long cacheSize) throws IOException {
@@ -53,150 +134,2159 @@ public class DiskLruCache {
         }
         fileManager.prepare();
         Journal journal = Journal.readJournal(fileManager, logger);
-        return new DiskLruCache(fileManager, journal, logger, cacheSize);
+        return new DiskLruCache(fileManager, journal, logger, cacheSize, null, 0);
+    }
+
+    /**
+     * Creates cache, that may be safely shared by several processes pointing to the same
+     * directory. Every operation takes exclusive file lock and re-reads journal if it was
+     * changed by another process since last operation.
+     */
+    public static DiskLruCache createShared(File cacheDir, long cacheSize) throws IOException {
+        if (cacheDir == null) {
+            throw new IllegalArgumentException("Cache directory must not be null");
+        }
+        FileManager fileManager = new SimpleFileManager(cacheDir);
+        Logger logger = new SimpleLogger(false);
+        return createShared(fileManager, logger, cacheSize);
+    }
+
+    public static DiskLruCache createShared(FileManager fileManager, Logger logger, long cacheSize)
+            throws IOException {
+        if (fileManager == null) {
+            throw new IllegalArgumentException("FileManager must not be null");
+        }
+        if (logger == null) {
+            throw new IllegalArgumentException("Logger must not be null");
+        }
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        fileManager.prepare();
+        ProcessLock processLock = ProcessLock.create(new File(fileManager.journal().getPath() + LOCK_SUFFIX));
+        long generation = processLock.acquire();
+        try {
+            Journal journal = Journal.readJournal(fileManager, logger);
+            return new DiskLruCache(fileManager, journal, logger, cacheSize, processLock, generation);
+        } finally {
+            processLock.release(-1);
+        }
     }
 
     public File put(String key, File file) throws IOException {
+        return put(key, file, Priority.NORMAL);
+    }
+
+    /**
+     * Puts file with specified eviction priority. Files of lower priority are evicted first,
+     * and pinned files are never evicted.
+     *
+     * @throws IOException if file is pinned and pinned size limit is exceeded
+     */
+    public File put(String key, File file, Priority priority) throws IOException {
+        assertKeyValid(key);
+        if (priority == null) {
+            throw new IllegalArgumentException("Priority must not be null");
+        }
+        // File is still owned by caller, so it is read without lock
+        FileDigest digest = digest(file);
+        synchronized (journal) {
+            lock();
+            try {
+                return putLocked(key, file, priority, digest);
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    private File putLocked(String key, File file, Priority priority, FileDigest digest) throws IOException {
+        adjustSize();
+        Record record = new Record(accept(key, file, digest), priority);
+        try {
+            invalidate(journal.put(record, limit()));
+        } catch (IOException ex) {
+            if (!journal.isReferenced(record.getName())) {
+                fileManager.delete(record.getName());
+            }
+            throw ex;
+        }
+        commitJournal();
+        scheduleEviction();
+        return fileManager.get(record.getName());
+    }
+
+    /**
+     * Moves file into cache directory and creates record for it.
+     * Record is not added to journal yet.
+     *
+     * @param digest content name and checksum of file, computed before lock is taken
+     */
+    private Record accept(String key, File file, FileDigest digest) throws IOException {
+        // Delete old file if exists to prevent file leaks when extension changes
+        deleteOld(key);
+        negatives.remove(key);
+
+        if ((deduplication && digest.contentName == null)
+                || (checksums && digest.checksum == Record.NO_CHECKSUM)) {
+            // Settings are changed since file was digested
+            digest = digest(file, deduplication, checksums);
+        }
+        String name = deduplication ? digest.contentName : generateName(key, file);
+        long time = System.currentTimeMillis();
+        long fileSize = file.length();
+        long checksum = checksums ? digest.checksum : Record.NO_CHECKSUM;
+        Record record = new Record(key, name, time, fileSize, Codec.RAW, Priority.NORMAL, checksum);
+        if (journal.isReferenced(name)) {
+            logger.log("[=] Contents of %s are already stored as %s", key, name);
+            if (!file.delete()) {
+                logger.log("[!] Unable to delete duplicate file %s", file.getName());
+            }
+        } else {
+            fileManager.accept(file, name);
+            commit(name);
+        }
+        return record;
+    }
+
+    /**
+     * Puts several files into cache at once. Space for all of them is freed
+     * in one eviction pass and journal is written once.
+     *
+     * @param files files to put by keys
+     * @return cached files by keys
+     * @throws IOException if files total size exceeds cache size
+     */
+    public Map<String, File> putAll(Map<String, File> files) throws IOException {
+        Map<String, FileDigest> digests = new HashMap<>();
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            assertKeyValid(entry.getKey());
+            digests.put(entry.getKey(), digest(entry.getValue()));
+        }
+        synchronized (journal) {
+            lock();
+            try {
+                return putAllLocked(files, digests);
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    private Map<String, File> putAllLocked(Map<String, File> files, Map<String, FileDigest> digests)
+            throws IOException {
+        adjustSize();
+        long size = 0;
+        for (File file : files.values()) {
+            size += file.length();
+        }
+        // Checked before files are accepted, so cache is left intact on failure
+        journal.assertFits(size, files.size(), limit());
+        List<Record> records = new ArrayList<>(files.size());
+        Map<String, File> result = new LinkedHashMap<>();
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            Record record = accept(entry.getKey(), entry.getValue(), digests.get(entry.getKey()));
+            records.add(record);
+            result.put(record.getKey(), fileManager.get(record.getName()));
+        }
+        try {
+            invalidate(journal.putAll(records, limit()));
+        } catch (IOException ex) {
+            for (Record record : records) {
+                release(record);
+            }
+            throw ex;
+        }
+        commitJournal();
+        scheduleEviction();
+        return result;
+    }
+
+    /**
+     * Stores buffer contents into cache directly, without intermediate file.
+     * Buffer position is not changed.
+     *
+     * @param key  the key to store contents with
+     * @param data contents to store, from position to limit
+     * @return cached file with stored contents or null if contents are packed into segment
+     */
+    public File putBytes(String key, ByteBuffer data) throws IOException {
         synchronized (journal) {
             assertKeyValid(key);
-            // Delete old file if exists to prevent file leaks when extension changes
-            Record oldRecord = journal.delete(key);
-            if (oldRecord != null) {
-                fileManager.delete(oldRecord.getName());
+            if (data == null) {
+                throw new IllegalArgumentException("Data must not be null");
+            }
+            lock();
+            try {
+                return putBytesLocked(key, data.duplicate(), codec);
+            } finally {
+                unlock();
             }
+        }
+    }
 
-            String name = generateName(key, file);
-            long time = System.currentTimeMillis();
-            long fileSize = file.length();
-            Record record = new Record(key, name, time, fileSize);
-            File cacheFile = fileManager.accept(file, name);
-            journal.put(record, cacheSize);
+    private File putBytesLocked(String key, ByteBuffer data, Codec codec) throws IOException {
+        adjustSize();
+        deleteOld(key);
+        negatives.remove(key);
+
+        long time = System.currentTimeMillis();
+        byte[] contents = null;
+        // Contents are copied only if memory cache keeps them
+        if (memoryCache != null && data.remaining() <= memoryCache.getMaxEntrySize()
+                && data.remaining() <= memoryCache.getMaxSize()) {
+            contents = new byte[data.remaining()];
+            data.duplicate().get(contents);
+        }
+        int codecId = Codec.RAW;
+        if (codec != null) {
+            ByteBuffer encoded = encode(codec, data.duplicate());
+            if (encoded.remaining() < data.remaining() * COMPRESSION_THRESHOLD) {
+                logger.log("[.] Contents of %s encoded from %d to %d bytes",
+                        key, data.remaining(), encoded.remaining());
+                data = encoded;
+                codecId = codec.getId();
+            } else {
+                logger.log("[.] Contents of %s are not compressible and stored raw", key);
+            }
+        }
+        long size = data.remaining();
+        long checksum = checksums ? checksum(data.duplicate()) : Record.NO_CHECKSUM;
+        if (size <= packThreshold && !deduplication) {
+            putPackedLocked(key, data, time, codecId, checksum, contents);
+            return null;
+        }
+        String name = deduplication ? contentName(data.duplicate()) : keyHash(key);
+        File cacheFile;
+        if (journal.isReferenced(name)) {
+            logger.log("[=] Contents of %s are already stored as %s", key, name);
+            cacheFile = fileManager.get(name);
+        } else {
+            File tempFile = fileManager.get(name + TEMP_SUFFIX);
+            writeFile(tempFile, data);
+            cacheFile = fileManager.accept(tempFile, name);
+            commit(name);
+        }
+        Record record = new Record(key, name, time, size, codecId, Priority.NORMAL, checksum);
+        try {
+            invalidate(journal.put(record, limit()));
+        } catch (IOException ex) {
+            if (!journal.isReferenced(name)) {
+                fileManager.delete(name);
+            }
+            throw ex;
+        }
+        if (contents != null) {
+            memoryCache.put(key, contents);
+        }
+        commitJournal();
+        scheduleEviction();
+        return cacheFile;
+    }
+
+    /**
+     * Appends small contents to segment of packed storage instead of creating file.
+     */
+    private void putPackedLocked(String key, ByteBuffer data, long time, int codecId, long checksum,
+                                 byte[] contents) throws IOException {
+        compactLocked();
+        long size = data.remaining();
+        String name = packedStore.append(key, data);
+        commit(name);
+        Record record = new Record(key, name, time, size, codecId, Priority.NORMAL, checksum);
+        try {
+            invalidate(journal.put(record, limit()));
+        } catch (IOException ex) {
+            packedStore.release(record);
+            throw ex;
+        }
+        if (contents != null) {
+            memoryCache.put(key, contents);
+        }
+        commitJournal();
+        scheduleEviction();
+    }
+
+    /**
+     * Moves live entries of sparse segments to the active segment and deletes sparse segments.
+     * Journal is written before segments are deleted, so entries are never lost. Moved entries
+     * are flushed too, unless durability is left to operating system.
+     */
+    private void compactLocked() throws IOException {
+        String segment;
+        while ((segment = packedStore.pollCompaction()) != null) {
+            logger.log("[.] Compact segment %s", segment);
+            for (Map.Entry<String, String> entry : packedStore.getEntries(segment).entrySet()) {
+                Record record = journal.peek(entry.getKey());
+                if (record != null && record.getName().equals(entry.getValue())) {
+                    String name = packedStore.append(record.getKey(), ByteBuffer.wrap(packedStore.read(record)));
+                    journal.rename(record.getKey(), name);
+                }
+            }
+            if (durability == Durability.NONE) {
+                journal.writeJournal();
+            } else {
+                // Moved entries must be flushed before segment is deleted
+                packedStore.sync();
+                journal.sync();
+            }
+            packedStore.deleteSegment(segment);
+        }
+    }
+
+    /**
+     * Returns cached file. Contents, encoded with codec, can't be returned as file,
+     * read them with {@link #getBytes(String)} or {@link #openStream(String)}.
+     *
+     * @param key the key to look up
+     * @return cached file or null if not found
+     * @throws IllegalStateException if contents of entry are encoded
+     */
+    public File get(String key) {
+        assertKeyValid(key);
+        if (isAbsent(key)) {
+            return null;
+        }
+        preverify(key);
+        synchronized (journal) {
+            try {
+                lock();
+            } catch (IOException ex) {
+                logger.log("[!] Unable to lock cache: %s", ex.getMessage());
+                return null;
+            }
+            try {
+                return getLocked(key);
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    private File getLocked(String key) {
+        Record record = journal.get(key);
+        if (record != null) {
+            File file = fileOf(record);
+            journal.writeJournal();
+            return file;
+        } else {
+            logger.log("[-] No requested file with key %s in cache", key);
+            return null;
+        }
+    }
+
+    /**
+     * Returns cached file or loads it, if it is missing. Concurrent calls for the same key
+     * are coalesced, so loader is invoked once and its result is shared by all callers.
+     * Loader failure is propagated to all waiting callers.
+     *
+     * @param key    the key to look up
+     * @param loader loader of missing file
+     * @return cached file or null if loader has nothing to load
+     */
+    public File get(final String key, final Loader loader) throws IOException {
+        assertKeyValid(key);
+        if (loader == null) {
+            throw new IllegalArgumentException("Loader must not be null");
+        }
+        File file = get(key);
+        if (file != null || isNegative(key)) {
+            return file;
+        }
+        return singleFlight.execute(key, new SingleFlight.Task() {
+            @Override
+            public File run() throws IOException {
+                // File may be loaded by previous call, that is already finished
+                File file = get(key);
+                if (file != null || isNegative(key)) {
+                    return file;
+                }
+                logger.log("[>] Loading %s", key);
+                File loaded = loader.load(key);
+                if (loaded == null) {
+                    addNegative(key);
+                    return null;
+                }
+                return put(key, loaded);
+            }
+        });
+    }
+
+    /**
+     * Returns contents of cached file. Contents of small files are kept in memory,
+     * if memory cache is enabled with {@link #setMemoryCacheSize(long, long)},
+     * so hot entries are served without touching file system.
+     *
+     * @param key the key to look up
+     * @return read-only buffer with file contents or null if not found
+     */
+    public ByteBuffer getBytes(String key) throws IOException {
+        assertKeyValid(key);
+        if (isAbsent(key)) {
+            return null;
+        }
+        preverify(key);
+        synchronized (journal) {
+            lock();
+            try {
+                return getBytesLocked(key);
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    private ByteBuffer getBytesLocked(String key) throws IOException {
+        Record record = journal.get(key);
+        if (record == null) {
+            logger.log("[-] No requested file with key %s in cache", key);
+            return null;
+        }
+        byte[] data = memoryCache != null ? memoryCache.get(key) : null;
+        if (data != null) {
+            // Access time is persisted with the next journal write
+            return ByteBuffer.wrap(data).asReadOnlyBuffer();
+        }
+        if (!isStored(record)) {
+            invalidate(journal.delete(key), RemovalCause.MISSING_FILE);
+            journal.writeJournal();
+            return null;
+        }
+        if (!verify(record, false)) {
+            journal.writeJournal();
+            return null;
+        }
+        if (record.getCodec() == Codec.RAW) {
+            data = record.isPacked() ? packedStore.read(record) : readFile(fileManager.get(record.getName()));
+        } else {
+            data = readStream(decode(record, openContents(record)));
+        }
+        if (memoryCache != null) {
+            memoryCache.put(key, data);
+        }
+        journal.writeJournal();
+        return ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    /**
+     * Opens read-only handle of cached file. Channels of recently read files are kept open,
+     * up to {@link #setMaxOpenFiles(int)}, so hot files are not reopened on each read.
+     * Handle must be closed after use.
+     *
+     * @param key the key to look up
+     * @return handle of cached file or null if not found
+     * @throws IOException if contents are encoded with codec or too many files are in use
+     */
+    public CachedChannel openChannel(String key) throws IOException {
+        assertKeyValid(key);
+        if (isAbsent(key)) {
+            return null;
+        }
+        preverify(key);
+        synchronized (journal) {
+            lock();
+            try {
+                return openChannelLocked(key);
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    private CachedChannel openChannelLocked(String key) throws IOException {
+        Record record = journal.get(key);
+        if (record == null) {
+            logger.log("[-] No requested file with key %s in cache", key);
+            return null;
+        }
+        if (record.getCodec() != Codec.RAW) {
+            throw new IOException(String.format("Contents of %s are encoded and can't be read by position", key));
+        }
+        if (isStored(record) && !verify(record, false)) {
+            journal.writeJournal();
+            return null;
+        }
+        try {
+            // Access time is persisted with the next journal write
+            if (record.isPacked()) {
+                if (!packedStore.exists(record)) {
+                    throw new FileNotFoundException(record.getName());
+                }
+                return packedStore.open(record);
+            }
+            ChannelPool.Entry entry = channels.acquire(record.getName(), fileManager.get(record.getName()));
+            return new CachedChannel(channels, entry);
+        } catch (FileNotFoundException ex) {
+            invalidate(journal.delete(key), RemovalCause.MISSING_FILE);
+            journal.writeJournal();
+            return null;
+        }
+    }
+
+    /**
+     * Reads cached contents starting at specified position into buffer.
+     * Reading is performed without holding cache lock.
+     *
+     * @param key      the key to look up
+     * @param position file position to read from
+     * @param buffer   buffer to read into
+     * @return count of bytes read or -1 if position is at or beyond end of file
+     * @throws IOException if contents are encoded with codec
+     * @see #openChannel(String)
+     */
+    public int read(String key, long position, ByteBuffer buffer) throws IOException, RecordNotFoundException {
+        if (position < 0) {
+            throw new IllegalArgumentException("Position must not be negative");
+        }
+        try (CachedChannel channel = requireChannel(key)) {
+            return channel.read(buffer, position);
+        }
+    }
+
+    /**
+     * Transfers range of cached contents to target channel.
+     * Transfer is performed without holding cache lock.
+     *
+     * @param key      the key to look up
+     * @param position file position to transfer from
+     * @param count    maximum count of bytes to transfer
+     * @param target   channel to transfer into
+     * @return count of bytes transferred, which is less than requested at end of file
+     * @throws IOException if contents are encoded with codec
+     * @see #openChannel(String)
+     */
+    public long transferTo(String key, long position, long count, WritableByteChannel target)
+            throws IOException, RecordNotFoundException {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("Position and count must not be negative");
+        }
+        try (CachedChannel channel = requireChannel(key)) {
+            return channel.transferTo(position, count, target);
+        }
+    }
+
+    private CachedChannel requireChannel(String key) throws IOException, RecordNotFoundException {
+        CachedChannel channel = openChannel(key);
+        if (channel == null) {
+            throw new RecordNotFoundException();
+        }
+        return channel;
+    }
+
+    /**
+     * Limits count of open channels of cached files. Idle channels over the limit
+     * are closed, least recently used first.
+     *
+     * @param maxOpenFiles maximum count of open channels
+     */
+    public void setMaxOpenFiles(int maxOpenFiles) {
+        if (maxOpenFiles <= 0) {
+            throw new IllegalArgumentException("Max open files count must be positive");
+        }
+        channels.setMaxSize(maxOpenFiles);
+    }
+
+    public int getMaxOpenFiles() {
+        return channels.getMaxSize();
+    }
+
+    /**
+     * Stores chunk of large entry. Chunks are tracked and evicted independently, so large entry
+     * may be cached partially, and its missing chunks may be put later. Chunks are stored raw.
+     *
+     * @param key    the key of entry
+     * @param offset offset of chunk within entry, must be multiple of chunk size
+     * @param data   chunk contents, not longer than chunk size
+     * @return file of chunk
+     */
+    public File putChunk(String key, long offset, ByteBuffer data) throws IOException {
+        synchronized (journal) {
+            assertKeyValid(key);
+            if (data == null) {
+                throw new IllegalArgumentException("Data must not be null");
+            }
+            if (offset < 0 || offset % chunkSize != 0) {
+                throw new IllegalArgumentException(String.format(
+                        "Offset %d is not aligned to chunk size %d", offset, chunkSize));
+            }
+            if (data.remaining() > chunkSize) {
+                throw new IllegalArgumentException(String.format(
+                        "Chunk size %d bytes exceeds %d bytes", data.remaining(), chunkSize));
+            }
+            lock();
+            try {
+                return putBytesLocked(Record.chunkKey(key, offset), data.duplicate(), null);
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    /**
+     * Reads contents of chunked entry starting at specified position. At most the rest of chunk,
+     * containing position, is read.
+     *
+     * @param key      the key of entry
+     * @param position position within entry to read from
+     * @param buffer   buffer to read into
+     * @return count of bytes read or -1 if chunk, containing position, is not cached
+     */
+    public int readChunked(String key, long position, ByteBuffer buffer) throws IOException {
+        if (position < 0) {
+            throw new IllegalArgumentException("Position must not be negative");
+        }
+        assertKeyValid(key);
+        long offset;
+        synchronized (journal) {
+            offset = position - position % chunkSize;
+        }
+        String chunkKey = Record.chunkKey(key, offset);
+        preverify(chunkKey);
+        CachedChannel channel;
+        synchronized (journal) {
+            lock();
+            try {
+                channel = openChannelLocked(chunkKey);
+            } finally {
+                unlock();
+            }
+        }
+        if (channel == null) {
+            return -1;
+        }
+        try {
+            return channel.read(buffer, position - offset);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns offsets of cached chunks of entry, so partially cached entry may be resumed.
+     */
+    public SortedSet<Long> getChunkOffsets(String key) {
+        synchronized (journal) {
+            assertKeyValid(key);
+            refresh();
+            return journal.getChunkOffsets(key);
+        }
+    }
+
+    /**
+     * Deletes all cached chunks of entry.
+     *
+     * @return count of deleted chunks
+     */
+    public int deleteChunks(String key) throws IOException {
+        synchronized (journal) {
+            assertKeyValid(key);
+            lock();
+            try {
+                List<String> keys = new ArrayList<>();
+                for (Long offset : journal.getChunkOffsets(key)) {
+                    keys.add(Record.chunkKey(key, offset));
+                }
+                return deleteAllLocked(keys);
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    /**
+     * Closes pooled file channels and the active segment of packed storage.
+     * With {@link Durability#BATCHED} policy pending changes are flushed and flush timer is stopped.
+     * Cache rejects further operations with {@link IllegalStateException}.
+     * Closing closed cache has no effect.
+     */
+    @Override
+    public void close() {
+        synchronized (journal) {
+            if (closed) {
+                return;
+            }
+            if (syncTimer != null) {
+                syncTimer.cancel();
+                syncTimer = null;
+                syncTask = null;
+                try {
+                    lock();
+                    try {
+                        syncLocked();
+                    } finally {
+                        unlock();
+                    }
+                } catch (IOException ex) {
+                    logger.log("[!] Unable to lock cache: %s", ex.getMessage());
+                }
+            }
+            closed = true;
+            channels.clear();
+            packedStore.close();
+            logger.log("[.] Cache closed");
+        }
+    }
+
+    /**
+     * Sets durability policy of cache. By default flushing is left to operating system.
+     * With {@link Durability#ON_COMMIT} policy each put and delete flushes contents and journal
+     * before it returns, while reads don't flush anything. With {@link Durability#BATCHED} policy
+     * changes are flushed in background once in specified interval. When policy is not
+     * {@link Durability#NONE}, journal is written to temporary file, that replaces it atomically,
+     * so journal is never truncated or torn in place.
+     *
+     * @param durability durability policy
+     * @param interval   flush interval in milliseconds for batched policy
+     */
+    public void setDurability(Durability durability, long interval) {
+        if (durability == null) {
+            throw new IllegalArgumentException("Durability must not be null");
+        }
+        if (durability == Durability.BATCHED && interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        synchronized (journal) {
+            if (this.durability == Durability.BATCHED && durability != Durability.BATCHED) {
+                syncTimer.cancel();
+                syncTimer = null;
+                syncTask = null;
+                syncLocked();
+            } else if (this.durability != Durability.BATCHED && durability == Durability.BATCHED) {
+                syncTimer = new Timer("disk-lru-cache-sync", true);
+            }
+            this.durability = durability;
+            this.syncInterval = interval;
+            journal.setAtomic(durability != Durability.NONE);
+        }
+    }
+
+    public Durability getDurability() {
+        synchronized (journal) {
+            return durability;
+        }
+    }
+
+    /**
+     * Enables packed storage of small contents, put with {@link #putBytes(String, ByteBuffer)}.
+     * Small contents are appended to large segment files instead of being stored in own files,
+     * which saves filesystem blocks, inodes and renames. Space of deleted contents is reclaimed
+     * by compaction of segments, which are less than half alive. Packed contents are moved
+     * to own file, when file is requested with {@link #get(String)}.
+     * Packed storage can't be used by shared cache.
+     *
+     * @param maxEntrySize maximum size of contents to pack or 0 to disable packing
+     */
+    public void setPackedStorage(long maxEntrySize) {
+        if (maxEntrySize < 0 || maxEntrySize > SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Max entry size must be within segment size");
+        }
+        synchronized (journal) {
+            if (processLock != null && maxEntrySize > 0) {
+                throw new IllegalStateException("Packed storage is not supported by shared cache");
+            }
+            this.packThreshold = maxEntrySize;
+        }
+    }
+
+    /**
+     * Sets size of chunks of large entries. Chunks, stored with another size, are not found anymore
+     * and are evicted eventually.
+     *
+     * @param chunkSize chunk size in bytes
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        synchronized (journal) {
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    public int getChunkSize() {
+        synchronized (journal) {
+            return chunkSize;
+        }
+    }
+
+    /**
+     * Opens stream to read cached contents. Encoded contents are decoded on the fly.
+     *
+     * @param key the key to look up
+     * @return stream with contents or null if not found
+     */
+    public InputStream openStream(String key) throws IOException {
+        assertKeyValid(key);
+        if (isAbsent(key)) {
+            return null;
+        }
+        preverify(key);
+        synchronized (journal) {
+            lock();
+            try {
+                return openStreamLocked(key);
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    private InputStream openStreamLocked(String key) throws IOException {
+        Record record = journal.get(key);
+        if (record == null) {
+            logger.log("[-] No requested file with key %s in cache", key);
+            return null;
+        }
+        byte[] data = memoryCache != null ? memoryCache.get(key) : null;
+        if (data != null) {
+            return new ByteArrayInputStream(data);
+        }
+        if (!isStored(record)) {
+            invalidate(journal.delete(key), RemovalCause.MISSING_FILE);
+            journal.writeJournal();
+            return null;
+        }
+        if (!verify(record, false)) {
+            journal.writeJournal();
+            return null;
+        }
+        InputStream stream = decode(record, openContents(record));
+        journal.writeJournal();
+        return stream;
+    }
+
+    public void delete(String key) throws IOException, RecordNotFoundException {
+        delete(key, true);
+    }
+
+    private void delete(String key, boolean writeJournal)
+            throws IOException, RecordNotFoundException {
+        synchronized (journal) {
+            assertKeyValid(key);
+            lock();
+            try {
+                Record record = journal.delete(key);
+                if (record != null) {
+                    invalidate(record, RemovalCause.EXPLICIT);
+                    if (writeJournal) {
+                        commitJournal();
+                    }
+                    release(record);
+                } else {
+                    throw new RecordNotFoundException();
+                }
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns several files at once, writing journal once.
+     *
+     * @param keys the keys to look up
+     * @return found files by keys, missing keys are not included
+     * @throws IllegalStateException if contents of any entry are encoded
+     */
+    public Map<String, File> getAll(Collection<String> keys) throws IOException {
+        for (String key : keys) {
+            assertKeyValid(key);
+        }
+        for (String key : keys) {
+            preverify(key);
+        }
+        synchronized (journal) {
+            lock();
+            try {
+                Map<String, File> result = new LinkedHashMap<>();
+                for (String key : keys) {
+                    Record record = journal.get(key);
+                    if (record == null) {
+                        continue;
+                    }
+                    File file = fileOf(record);
+                    if (file != null) {
+                        result.put(key, file);
+                    }
+                }
+                journal.writeJournal();
+                return result;
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    /**
+     * Deletes several files at once, writing journal once.
+     * Keys, that are not found in cache, are ignored.
+     *
+     * @param keys the keys to delete
+     * @return count of deleted files
+     */
+    public int deleteAll(Collection<String> keys) throws IOException {
+        synchronized (journal) {
+            for (String key : keys) {
+                assertKeyValid(key);
+            }
+            lock();
+            try {
+                return deleteAllLocked(keys);
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    private int deleteAllLocked(Collection<String> keys) throws IOException {
+        int count = 0;
+        for (String key : keys) {
+            Record record = journal.delete(key);
+            if (record != null) {
+                invalidate(record, RemovalCause.EXPLICIT);
+                release(record);
+                count++;
+            }
+        }
+        commitJournal();
+        return count;
+    }
+
+    public void clearCache() throws IOException {
+        synchronized (journal) {
+            lock();
+            try {
+                Set<String> keys = new HashSet<>(journal.keySet());
+                for (String key : keys) {
+                    try {
+                        delete(key, false);
+                    } catch (RecordNotFoundException ignored) {
+                    }
+                }
+                commitJournal();
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    /**
+     * Changes cache size at runtime. If used space exceeds new size, least recently used
+     * files are evicted in small batches, releasing lock between them.
+     * While adaptive size is enabled, new size takes effect after it is disabled.
+     *
+     * @param maxSize new cache size in bytes
+     */
+    public void setMaxSize(long maxSize) throws IOException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        long limit;
+        synchronized (journal) {
+            cacheSize = maxSize;
+            limit = limit();
+        }
+        trimToSize(limit);
+    }
+
+    /**
+     * Evicts least recently used files until used space fits specified size.
+     * Files are evicted in small batches, releasing lock between them,
+     * so other operations are not blocked for the whole trim.
+     *
+     * @param size size in bytes to fit
+     */
+    public void trimToSize(long size) throws IOException {
+        if (size < 0) {
+            throw new IllegalArgumentException("Size must not be negative");
+        }
+        boolean completed = false;
+        while (!completed) {
+            synchronized (journal) {
+                completed = !trimStep(size);
+            }
+        }
+    }
+
+    /**
+     * Changes eviction priority of cached file.
+     *
+     * @throws IOException if file is pinned and pinned size limit is exceeded
+     */
+    public void setPriority(String key, Priority priority) throws IOException, RecordNotFoundException {
+        synchronized (journal) {
+            assertKeyValid(key);
+            if (priority == null) {
+                throw new IllegalArgumentException("Priority must not be null");
+            }
+            lock();
+            try {
+                if (journal.setPriority(key, priority, limit()) == null) {
+                    throw new RecordNotFoundException();
+                }
+                commitJournal();
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    /**
+     * Limits total size of pinned files, so they can't starve the rest of cache.
+     * By default pinned files may take up to half of cache size.
+     *
+     * @param limit limit in bytes
+     */
+    public void setPinnedSizeLimit(long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Pinned size limit must not be negative");
+        }
+        synchronized (journal) {
+            journal.setPinnedLimit(limit);
+        }
+    }
+
+    public long getPinnedSize() {
+        synchronized (journal) {
+            refresh();
+            return journal.getPinnedSize();
+        }
+    }
+
+    /**
+     * Limits count of cached files in addition to cache size. If current count exceeds
+     * the limit, least recently used files are evicted in small batches.
+     *
+     * @param maxEntries maximum count of files
+     */
+    public void setMaxEntries(int maxEntries) throws IOException {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries count must be positive");
+        }
+        long limit;
+        synchronized (journal) {
+            journal.setMaxCount(maxEntries);
+            limit = limit();
+        }
+        trimToSize(limit);
+    }
+
+    public int getMaxEntries() {
+        synchronized (journal) {
+            return journal.getMaxCount();
+        }
+    }
+
+    /**
+     * Enables in-memory cache for contents of small entries, returned by {@link #getBytes(String)}.
+     *
+     * @param maxSize      memory budget in bytes, zero disables memory cache
+     * @param maxEntrySize maximum size of single entry to be kept in memory
+     */
+    public void setMemoryCacheSize(long maxSize, long maxEntrySize) {
+        if (maxSize < 0 || maxEntrySize < 0) {
+            throw new IllegalArgumentException("Memory cache size must not be negative");
+        }
+        synchronized (journal) {
+            memoryCache = maxSize > 0 ? new MemoryCache(maxSize, maxEntrySize) : null;
+        }
+    }
+
+    /**
+     * Sets codec to encode contents stored with {@link #putBytes(String, ByteBuffer)}.
+     * Contents, that are not compressible, are stored raw. Files stored with
+     * {@link #put(String, File)} are never encoded. Use {@link #getBytes(String)} or
+     * {@link #openStream(String)} to read encoded contents.
+     *
+     * @param codec codec to encode contents with or null to store contents raw
+     */
+    public void setCodec(Codec codec) {
+        synchronized (journal) {
+            if (codec != null) {
+                registerCodec(codec);
+            }
+            this.codec = codec;
+        }
+    }
+
+    /**
+     * Registers codec to decode contents stored earlier. Built-in codecs are always registered.
+     */
+    public void registerCodec(Codec codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("Codec must not be null");
+        }
+        if (codec.getId() <= Codec.RAW || codec.getId() > 0xff) {
+            throw new IllegalArgumentException(String.format("Invalid codec id: %d", codec.getId()));
+        }
+        synchronized (journal) {
+            codecs.put(codec.getId(), codec);
+        }
+    }
+
+    /**
+     * Enables content-addressed storage of new entries. Files with identical contents are
+     * stored once and shared by all keys, so used space is accounted once as well.
+     * Shared file is deleted when the last key referencing it is removed.
+     * Files returned by cache must not be modified, when deduplication is enabled.
+     */
+    public void setDeduplicationEnabled(boolean enabled) {
+        synchronized (journal) {
+            this.deduplication = enabled;
+        }
+    }
+
+    public boolean isDeduplicationEnabled() {
+        synchronized (journal) {
+            return deduplication;
+        }
+    }
+
+    /**
+     * Enables checksums of contents. Checksum is computed, when contents are put,
+     * and verified on the first read of contents, so truncated or damaged file
+     * is deleted and treated as a miss. Files, put while checksums are disabled,
+     * are verified by size only.
+     */
+    public void setChecksumEnabled(boolean enabled) {
+        synchronized (journal) {
+            checksums = enabled;
+        }
+    }
+
+    public boolean isChecksumEnabled() {
+        synchronized (journal) {
+            return checksums;
+        }
+    }
+
+    /**
+     * Verifies contents of all cached files, including ones already verified on read,
+     * and deletes corrupted ones. Files are verified one by one, releasing lock between them,
+     * so scrub may be scheduled periodically in background.
+     *
+     * @return count of deleted corrupted or missing files
+     */
+    public int scrub() throws IOException {
+        List<Record> records;
+        synchronized (journal) {
+            lock();
+            try {
+                records = journal.getRecords();
+            } finally {
+                unlock();
+            }
+        }
+        int count = 0;
+        for (Record record : records) {
+            // Contents are read without lock, record is checked again before it is deleted
+            boolean intact = isIntact(record);
+            synchronized (journal) {
+                lock();
+                try {
+                    Record current = journal.peek(record.getKey());
+                    if (!isSamePut(current, record)) {
+                        continue;
+                    }
+                    if (!isStored(current)) {
+                        invalidate(journal.delete(current.getKey()), RemovalCause.MISSING_FILE);
+                        journal.writeJournal();
+                        count++;
+                    } else if (!verified(current, intact)) {
+                        journal.writeJournal();
+                        count++;
+                    }
+                } finally {
+                    unlock();
+                }
+            }
+        }
+        logger.log("[.] Scrub found %d corrupted or missing files", count);
+        return count;
+    }
+
+    /**
+     * Sets time to remember keys, that loader had nothing to load for.
+     * Such keys are not loaded again until this time passes.
+     *
+     * @param time time in milliseconds, zero disables negative caching
+     */
+    public void setNegativeCacheTime(long time) {
+        if (time < 0) {
+            throw new IllegalArgumentException("Negative cache time must not be negative");
+        }
+        synchronized (journal) {
+            negativeCacheTime = time;
+            if (time == 0) {
+                negatives.clear();
+            }
+        }
+    }
+
+    /**
+     * Enables background eviction. When used space exceeds high watermark after put,
+     * least recently used files are evicted on specified executor in small batches,
+     * until used space drops below low watermark. Put evicts files itself only when
+     * the new file does not fit into cache size.
+     *
+     * @param executor      executor to evict files on or null to disable background eviction
+     * @param highWatermark fraction of cache size to start eviction at
+     * @param lowWatermark  fraction of cache size to evict files to
+     */
+    public void setBackgroundEviction(Executor executor, float highWatermark, float lowWatermark) {
+        if (executor != null && (lowWatermark <= 0 || lowWatermark >= highWatermark || highWatermark > 1)) {
+            throw new IllegalArgumentException("Watermarks must satisfy 0 < low < high <= 1");
+        }
+        synchronized (journal) {
+            this.evictionExecutor = executor;
+            this.highWatermark = highWatermark;
+            this.lowWatermark = lowWatermark;
+        }
+    }
+
+    /**
+     * Sets listener of files removal. Notifications are delivered in batches on specified executor,
+     * without holding cache lock, so slow listener doesn't block cache operations.
+     *
+     * @param listener listener of removals or null to remove listener
+     * @param executor executor to deliver notifications on
+     */
+    public void setRemovalListener(RemovalListener listener, Executor executor) {
+        if (listener != null && executor == null) {
+            throw new IllegalArgumentException("Executor must not be null");
+        }
+        synchronized (journal) {
+            this.removalListener = listener;
+            this.removalExecutor = executor;
+            if (listener == null) {
+                synchronized (removals) {
+                    removals.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Enables adaptive cache size. Usable space of file system is sampled on put, at most once in
+     * {@link #ADAPTIVE_SIZE_SAMPLE_INTERVAL}, and cache size is set to leave reserve of usable space free,
+     * within min and max sizes. When file system runs low on space, files are evicted proactively.
+     * Cache size, specified on creation, is not used while adaptive size is enabled.
+     *
+     * @param minSize minimum cache size in bytes
+     * @param maxSize maximum cache size in bytes
+     * @param reserve usable space in bytes to leave free
+     */
+    public void setAdaptiveSize(long minSize, long maxSize, long reserve) {
+        if (minSize <= 0 || maxSize < minSize) {
+            throw new IllegalArgumentException("Sizes must satisfy 0 < min <= max");
+        }
+        if (reserve < 0) {
+            throw new IllegalArgumentException("Reserve must not be negative");
+        }
+        File dir = fileManager.journal().getAbsoluteFile().getParentFile();
+        synchronized (journal) {
+            adaptiveSize = new AdaptiveSize(dir, minSize, maxSize, reserve, ADAPTIVE_SIZE_SAMPLE_INTERVAL);
+            adaptiveSize.sample(journal.getTotalSize());
+            publishSummary();
+        }
+    }
+
+    public void disableAdaptiveSize() {
+        synchronized (journal) {
+            adaptiveSize = null;
+            publishSummary();
+        }
+    }
+
+    public long getMemoryCacheSize() {
+        synchronized (journal) {
+            return memoryCache != null ? memoryCache.getMaxSize() : 0;
+        }
+    }
+
+    /**
+     * Returns snapshot of keys in default namespace.
+     */
+    public Set<String> keySet() {
+        return keySet("");
+    }
+
+    Set<String> keySet(String namespace) {
+        synchronized (journal) {
+            refresh();
+            return journal.keySet(namespace);
+        }
+    }
+
+    /**
+     * Returns snapshot of keys, that start with specified prefix, in order of keys.
+     * Only matching keys are visited and keys of namespaces, which names start with prefix,
+     * are skipped a namespace at a time, so cost doesn't depend on count of other keys.
+     */
+    public Set<String> keysWithPrefix(String prefix) {
+        return keysWithPrefix("", prefix);
+    }
+
+    Set<String> keysWithPrefix(String namespace, String prefix) {
+        assertPrefixValid(prefix);
+        synchronized (journal) {
+            refresh();
+            Set<String> keys = new LinkedHashSet<>();
+            for (Record record : journal.getRecordsWithPrefix(namespace, prefix, null, Integer.MAX_VALUE)) {
+                if (!record.isChunk()) {
+                    keys.add(record.getLocalKey());
+                }
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Returns iterator over keys, that start with specified prefix, in order of keys.
+     * Keys are fetched in batches, releasing lock between them, so iteration over many keys
+     * doesn't block other operations. Iterator is weakly consistent: keys, put or deleted
+     * during iteration, may or may not be returned.
+     */
+    public Iterator<String> keyIterator(String prefix) {
+        return keyIterator("", prefix);
+    }
+
+    Iterator<String> keyIterator(String namespace, String prefix) {
+        assertPrefixValid(prefix);
+        return new KeyIterator(namespace, prefix);
+    }
+
+    /**
+     * Deletes all files, which keys start with specified prefix, including chunks of entries.
+     * Files are deleted in small batches, releasing lock between them.
+     *
+     * @return count of deleted files
+     */
+    public int deleteByPrefix(String prefix) throws IOException {
+        return deleteByPrefix("", prefix);
+    }
+
+    int deleteByPrefix(String namespace, String prefix) throws IOException {
+        assertPrefixValid(prefix);
+        int count = 0;
+        boolean completed = false;
+        while (!completed) {
+            synchronized (journal) {
+                lock();
+                try {
+                    List<Record> records = journal.getRecordsWithPrefix(
+                            namespace, prefix, null, EVICTION_BATCH_SIZE);
+                    for (Record record : records) {
+                        journal.delete(record.getKey());
+                        invalidate(record, RemovalCause.EXPLICIT);
+                        release(record);
+                    }
+                    if (!records.isEmpty()) {
+                        commitJournal();
+                    }
+                    count += records.size();
+                    completed = records.size() < EVICTION_BATCH_SIZE;
+                } finally {
+                    unlock();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns namespace with isolated key space. Namespaces share cache size
+     * and are evicted fairly according to their weights and quotas.
+     *
+     * @param name name of namespace
+     */
+    public CacheNamespace namespace(String name) {
+        if (name == null || name.isEmpty() || name.indexOf(Record.NAMESPACE_SEPARATOR) != -1
+                || name.indexOf(Record.CHUNK_SEPARATOR) != -1) {
+            throw new IllegalArgumentException(String.format("Invalid namespace name: '%s'", name));
+        }
+        return new CacheNamespace(this, name);
+    }
+
+    long getNamespaceSize(String namespace) {
+        synchronized (journal) {
+            refresh();
+            return journal.getNamespaceSize(namespace);
+        }
+    }
+
+    void setNamespaceWeight(String namespace, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Weight must be positive");
+        }
+        synchronized (journal) {
+            journal.setNamespaceWeight(namespace, weight);
+        }
+    }
+
+    void setNamespaceQuota(String namespace, long quota) {
+        synchronized (journal) {
+            journal.setNamespaceQuota(namespace, quota);
+        }
+    }
+
+    /**
+     * Returns cache size in bytes. If adaptive size is enabled,
+     * returns current limit, derived from file system usable space.
+     */
+    public long getCacheSize() {
+        synchronized (journal) {
+            return limit();
+        }
+    }
+
+    public long getUsedSpace() {
+        synchronized (journal) {
+            refresh();
+            return journal.getTotalSize();
+        }
+    }
+
+    public long getFreeSpace() {
+        synchronized (journal) {
+            refresh();
+            return limit() - journal.getTotalSize();
+        }
+    }
+
+    public long getJournalSize() {
+        synchronized (journal) {
+            refresh();
+            return journal.getJournalSize();
+        }
+    }
+
+    /**
+     * Returns snapshot of cache state without locking. Snapshot is published after
+     * each cache operation, so it's cheap to poll. In shared mode changes, made by
+     * other processes, are reflected after the next operation of this instance.
+     */
+    public CacheSummary summary() {
+        return summary;
+    }
+
+    /**
+     * Returns information about all cached records sorted by last access time
+     * (most recently accessed first). This method does not update access times.
+     *
+     * @return list of RecordInfo objects sorted by LRU order
+     */
+    public List<RecordInfo> getRecordsInfo() {
+        synchronized (journal) {
+            refresh();
+            List<Record> records = journal.getRecordsSortedByTime();
+            List<RecordInfo> result = new ArrayList<>(records.size());
+            for (Record record : records) {
+                result.add(toInfo(record));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns page of records information sorted by LRU order (most recently used first).
+     * Only requested page is copied, so records may be listed page by page
+     * without holding lock for the whole walk. Records, accessed after the previous page
+     * was returned, move ahead of it and are not returned by the next pages.
+     *
+     * @param after the last record of previous page or null for the first page
+     * @param limit maximum count of records in page
+     * @return page of records information, that is shorter than limit for the last page
+     */
+    public List<RecordInfo> getRecordsInfo(RecordInfo after, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        Record position = null;
+        if (after != null) {
+            position = new Record("", "", after.getLastAccessed(), 0, Codec.RAW, Priority.NORMAL,
+                    Record.NO_CHECKSUM, after.sequence);
+        }
+        synchronized (journal) {
+            refresh();
+            List<Record> records = journal.getRecordsPage(position, limit);
+            List<RecordInfo> result = new ArrayList<>(records.size());
+            for (Record record : records) {
+                result.add(toInfo(record));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns iterator over records information in LRU order (most recently used first).
+     * Records are fetched in pages, releasing lock between them.
+     *
+     * @see #getRecordsInfo(RecordInfo, int)
+     */
+    public Iterator<RecordInfo> recordIterator() {
+        return new RecordIterator();
+    }
+
+    /**
+     * Returns information about a specific cached record without updating access time.
+     *
+     * @param key the key to look up
+     * @return RecordInfo or null if not found
+     */
+    public RecordInfo getRecordInfo(String key) {
+        synchronized (journal) {
+            assertKeyValid(key);
+            refresh();
+            Record record = journal.peek(key);
+            if (record != null) {
+                return toInfo(record);
+            }
+            return null;
+        }
+    }
+
+    private static RecordInfo toInfo(Record record) {
+        return new RecordInfo(
+                record.getEntryKey(),
+                record.getNamespace(),
+                record.getChunkOffset(),
+                record.getName(),
+                record.getSize(),
+                record.getTime(),
+                record.getPriority(),
+                record.getSequence()
+        );
+    }
+
+    /**
+     * Takes process lock in shared mode and picks up journal changes made by other processes.
+     * Does nothing for cache, that is not shared. Calls may be nested.
+     */
+    private void lock() throws IOException {
+        assertOpen();
+        if (lockDepth++ > 0 || processLock == null) {
+            return;
+        }
+        try {
+            long current = processLock.acquire();
+            if (current != generation) {
+                logger.log("[.] Journal changed by another process");
+                journal.reload();
+                if (memoryCache != null) {
+                    memoryCache.clear();
+                }
+                // Files may be replaced by another process under the same names
+                channels.clear();
+                verified.clear();
+                packedStore.load(journal.getRecords());
+                generation = current;
+            }
+            lockedChangeCount = journal.getChangeCount();
+        } catch (IOException ex) {
+            lockDepth--;
+            throw ex;
+        }
+    }
+
+    private void unlock() {
+        if (--lockDepth > 0) {
+            return;
+        }
+        publishSummary();
+        if (processLock == null) {
+            return;
+        }
+        // Journal, rewritten only to save access times, is not reloaded by other processes
+        if (journal.getChangeCount() != lockedChangeCount) {
+            processLock.release(++generation);
+        } else {
+            processLock.release(-1);
+        }
+    }
+
+    private void assertOpen() {
+        if (closed) {
+            throw new IllegalStateException("Cache is closed");
+        }
+    }
+
+    /**
+     * Publishes snapshot of cache state for lock-free {@link #summary()}.
+     */
+    private void publishSummary() {
+        summary = new CacheSummary(journal.getCount(), journal.getTotalSize(), limit(),
+                journal.getJournalSize(), journal.getOldestTime());
+    }
+
+    /**
+     * Picks up journal changes made by other processes before reading cache state.
+     */
+    private void refresh() {
+        try {
+            lock();
+            unlock();
+        } catch (IOException ex) {
+            logger.log("[!] Unable to lock cache: %s", ex.getMessage());
+        }
+    }
+
+    private void deleteOld(String key) throws IOException {
+        Record oldRecord = journal.delete(key);
+        if (oldRecord != null) {
+            invalidate(oldRecord, RemovalCause.REPLACED);
+            release(oldRecord);
+        }
+    }
+
+    /**
+     * Deletes file of removed record, unless it is shared with another record.
+     */
+    private void release(Record record) throws IOException {
+        // Packed entries are released by packed storage on invalidation
+        if (!record.isPacked() && !journal.isReferenced(record.getName())) {
+            fileManager.delete(record.getName());
+        }
+    }
+
+    /**
+     * Flushes contents of new file according to durability policy.
+     * Contents are flushed before journal, that refers to them, is written.
+     */
+    private void commit(String name) throws IOException {
+        if (durability == Durability.ON_COMMIT) {
+            syncContents(name);
+        } else if (durability == Durability.BATCHED) {
+            unsynced.add(name);
+            scheduleSync();
+        }
+    }
+
+    /**
+     * Writes journal after put or delete. With {@link Durability#ON_COMMIT} policy journal
+     * is flushed, while journal writes, that only persist access times, are not.
+     */
+    private void commitJournal() {
+        if (durability == Durability.ON_COMMIT) {
+            journal.sync();
+        } else {
             journal.writeJournal();
-            return cacheFile;
         }
     }
 
-    public File get(String key) {
+    private void syncContents(String name) throws IOException {
+        if (PackedStore.isPacked(name)) {
+            packedStore.sync();
+        } else {
+            FileSync.force(fileManager.get(name));
+        }
+    }
+
+    private void scheduleSync() {
+        if (syncTask != null) {
+            return;
+        }
+        syncTask = new TimerTask() {
+            @Override
+            public void run() {
+                syncInBackground(this);
+            }
+        };
+        syncTimer.schedule(syncTask, syncInterval);
+    }
+
+    private void syncInBackground(TimerTask task) {
         synchronized (journal) {
-            assertKeyValid(key);
-            Record record = journal.get(key);
-            if (record != null) {
-                File file = fileManager.get(record.getName());
-                if (!file.exists()) {
-                    journal.delete(key);
-                    file = null;
-                }
-                journal.writeJournal();
-                return file;
-            } else {
-                logger.log("[-] No requested file with key %s in cache", key);
-                return null;
+            if (syncTask != task || closed) {
+                return;
+            }
+            syncTask = null;
+            try {
+                lock();
+            } catch (IOException ex) {
+                logger.log("[!] Unable to lock cache: %s", ex.getMessage());
+                return;
+            }
+            try {
+                syncLocked();
+            } finally {
+                unlock();
             }
         }
     }
 
-    public void delete(String key) throws IOException, RecordNotFoundException {
-        delete(key, true);
+    /**
+     * Flushes contents of files, put since the last flush, and journal.
+     */
+    private void syncLocked() {
+        for (String name : unsynced) {
+            try {
+                syncContents(name);
+            } catch (IOException ex) {
+                // File may be deleted since it was put
+                logger.log("[!] Unable to flush %s: %s", name, ex.getMessage());
+            }
+        }
+        unsynced.clear();
+        journal.sync();
     }
 
-    private void delete(String key, boolean writeJournal)
-            throws IOException, RecordNotFoundException {
+    /**
+     * Answers miss without locking, if key is definitely not cached. Not used in shared mode,
+     * as keys may be put by another process.
+     */
+    private boolean isAbsent(String key) {
+        // Closed cache is not asked, so it rejects the call
+        if (!closed && processLock == null && !journal.mightContain(key)) {
+            logger.log("[-] No requested file with key %s in cache", key);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isStored(Record record) {
+        return record.isPacked() ? packedStore.exists(record) : fileManager.exists(record.getName());
+    }
+
+    private InputStream openContents(Record record) throws IOException {
+        if (record.isPacked()) {
+            return new ByteArrayInputStream(packedStore.read(record));
+        }
+        return new FileInputStream(fileManager.get(record.getName()));
+    }
+
+    /**
+     * Checks that stored contents match size and checksum of record. Contents are verified
+     * on the first read only, unless check is forced. Corrupted record is deleted.
+     *
+     * @return true if contents are intact
+     */
+    private boolean verify(Record record, boolean force) {
+        if (!force && verified.contains(record.getName())) {
+            return true;
+        }
+        return verified(record, isIntact(record));
+    }
+
+    /**
+     * Verifies checksum of record contents on its first read before lock is taken,
+     * so checksum of large file doesn't block other operations. Lock is held
+     * only to look record up and to apply result, if record is not replaced meanwhile.
+     */
+    private void preverify(String key) {
+        Record record;
         synchronized (journal) {
-            assertKeyValid(key);
-            Record record = journal.delete(key);
-            if (record != null) {
-                if (writeJournal) {
+            assertOpen();
+            record = journal.peek(key);
+            if (record == null || record.getChecksum() == Record.NO_CHECKSUM
+                    || verified.contains(record.getName())) {
+                return;
+            }
+        }
+        boolean intact = isIntact(record);
+        synchronized (journal) {
+            try {
+                lock();
+            } catch (IOException ex) {
+                logger.log("[!] Unable to lock cache: %s", ex.getMessage());
+                return;
+            }
+            try {
+                Record current = journal.peek(key);
+                if (isSamePut(current, record) && isStored(current) && !verified(current, intact)) {
                     journal.writeJournal();
                 }
-                fileManager.delete(record.getName());
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    /**
+     * Checks whether current record is the same put as checked one, so result of check applies to it.
+     * Contents attributes are not enough, as the same contents may be put again meanwhile.
+     */
+    private static boolean isSamePut(Record current, Record record) {
+        return current != null && current.getPutSequence() == record.getPutSequence()
+                && current.getName().equals(record.getName());
+    }
+
+    /**
+     * Checks that stored contents match size and checksum of record. Called without lock.
+     */
+    private boolean isIntact(Record record) {
+        try {
+            return (record.isPacked() || fileManager.get(record.getName()).length() == record.getSize())
+                    && (record.getChecksum() == Record.NO_CHECKSUM
+                    || checksum(openContents(record)) == record.getChecksum());
+        } catch (IOException ex) {
+            logger.log("[!] Unable to verify %s: %s", record.getKey(), ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Applies result of verification to current record. Corrupted record is deleted.
+     *
+     * @return true if contents are intact
+     */
+    private boolean verified(Record record, boolean intact) {
+        String name = record.getName();
+        if (intact) {
+            verified.add(name);
+            return true;
+        }
+        logger.log("[!] Contents of %s are corrupted", record.getKey());
+        journal.delete(record.getKey());
+        invalidate(record, RemovalCause.CORRUPTED);
+        try {
+            release(record);
+        } catch (IOException ex) {
+            logger.log("[!] Unable to delete %s: %s", name, ex.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Returns file of record. Packed entry is moved from segment to its own file,
+     * as segment can't be exposed as a file. Missing record is deleted from journal.
+     *
+     * @return file of record or null if it is missing
+     * @throws IllegalStateException if contents are encoded
+     */
+    private File fileOf(Record record) {
+        if (record.getCodec() != Codec.RAW) {
+            throw new IllegalStateException(String.format(
+                    "Contents of %s are encoded and can't be returned as file", record.getKey()));
+        }
+        if (!isStored(record)) {
+            invalidate(journal.delete(record.getKey()), RemovalCause.MISSING_FILE);
+            return null;
+        }
+        if (!verify(record, false)) {
+            return null;
+        }
+        if (!record.isPacked()) {
+            return fileManager.get(record.getName());
+        }
+        try {
+            String name = keyHash(record.getKey());
+            File tempFile = fileManager.get(name + TEMP_SUFFIX);
+            writeFile(tempFile, ByteBuffer.wrap(packedStore.read(record)));
+            File file = fileManager.accept(tempFile, name);
+            commit(name);
+            journal.rename(record.getKey(), name);
+            packedStore.release(record);
+            logger.log("[.] Unpack %s from %s", record.getKey(), record.getName());
+            return file;
+        } catch (IOException ex) {
+            logger.log("[!] Unable to unpack %s: %s", record.getKey(), ex.getMessage());
+            return null;
+        }
+    }
+
+    private long limit() {
+        return adaptiveSize != null ? adaptiveSize.getLimit() : cacheSize;
+    }
+
+    /**
+     * Samples file system usable space and evicts files, if cache size shrank below used space.
+     */
+    private void adjustSize() throws IOException {
+        if (adaptiveSize == null || !adaptiveSize.sample(journal.getTotalSize())) {
+            return;
+        }
+        long limit = adaptiveSize.getLimit();
+        logger.log("[.] Cache size adjusted to %d bytes", limit);
+        if (journal.getTotalSize() > limit) {
+            if (evictionExecutor != null) {
+                scheduleEviction();
             } else {
-                throw new RecordNotFoundException();
+                invalidate(journal.trim(limit, Integer.MAX_VALUE));
+                journal.writeJournal();
             }
         }
     }
 
-    public void clearCache() throws IOException {
-        synchronized (journal) {
-            Set<String> keys = new HashSet<>(journal.keySet());
-            for (String key : keys) {
-                try {
-                    delete(key, false);
-                } catch (RecordNotFoundException ignored) {
-                }
+    private void scheduleEviction() {
+        if (evictionExecutor == null || journal.getTotalSize() <= limit() * highWatermark) {
+            return;
+        }
+        if (evictionScheduled.compareAndSet(false, true)) {
+            try {
+                evictionExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        evictInBackground();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                evictionScheduled.set(false);
+                logger.log("[!] Background eviction rejected: %s", ex.getMessage());
             }
-            journal.writeJournal();
         }
     }
 
-    public Set<String> keySet() {
-        synchronized (journal) {
-            return journal.keySet();
+    private void evictInBackground() {
+        try {
+            boolean completed = false;
+            while (!completed) {
+                synchronized (journal) {
+                    long size = (long) (limit() * lowWatermark);
+                    completed = closed || evictionExecutor == null || !trimStep(size);
+                }
+            }
+        } catch (IOException ex) {
+            logger.log("[!] Background eviction failed: %s", ex.getMessage());
+        } finally {
+            evictionScheduled.set(false);
         }
     }
 
-    public long getCacheSize() {
-        return cacheSize;
+    /**
+     * Evicts one batch of least recently used files, releasing lock afterwards
+     * to let other operations proceed.
+     *
+     * @return true if used space still exceeds specified size
+     */
+    private boolean trimStep(long size) throws IOException {
+        lock();
+        try {
+            List<Record> evicted = journal.trim(size, EVICTION_BATCH_SIZE);
+            if (!evicted.isEmpty()) {
+                invalidate(evicted);
+                journal.writeJournal();
+            }
+            // Nothing is evicted, when the rest of files are pinned
+            return !evicted.isEmpty() && journal.exceeds(size);
+        } finally {
+            unlock();
+        }
     }
 
-    public long getUsedSpace() {
+    private boolean isNegative(String key) {
         synchronized (journal) {
-            return journal.getTotalSize();
+            Long expiration = negatives.get(key);
+            return expiration != null && expiration > System.currentTimeMillis();
         }
     }
 
-    public long getFreeSpace() {
+    private void addNegative(String key) {
         synchronized (journal) {
-            return cacheSize - journal.getTotalSize();
+            if (negativeCacheTime == 0) {
+                return;
+            }
+            long time = System.currentTimeMillis();
+            Iterator<Long> iterator = negatives.values().iterator();
+            while (iterator.hasNext() && iterator.next() <= time) {
+                iterator.remove();
+            }
+            negatives.remove(key);
+            negatives.put(key, time + negativeCacheTime);
         }
     }
 
-    public long getJournalSize() {
-        synchronized (journal) {
-            return journal.getJournalSize();
+    private void invalidate(Record record, RemovalCause cause) {
+        if (memoryCache != null) {
+            memoryCache.remove(record.getKey());
+        }
+        if (record.isPacked()) {
+            packedStore.release(record);
+            verified.remove(record.getName());
+        } else if (!journal.isReferenced(record.getName())) {
+            channels.close(record.getName());
+            verified.remove(record.getName());
+        }
+        if (removalListener != null) {
+            synchronized (removals) {
+                removals.add(new RemovalNotification(record.getEntryKey(), record.getNamespace(),
+                        record.getChunkOffset(), record.getSize(), cause));
+            }
+            scheduleRemovals();
+        }
+    }
+
+    private void invalidate(List<Record> records) {
+        for (Record record : records) {
+            invalidate(record, RemovalCause.EVICTED_SIZE);
         }
     }
 
     /**
-     * Returns information about all cached records sorted by last access time
-     * (most recently accessed first). This method does not update access times.
-     *
-     * @return list of RecordInfo objects sorted by LRU order
+     * Schedules delivery of pending removal notifications. Notifications, added
+     * before delivery is started, are delivered in the same batch.
      */
-    public List<RecordInfo> getRecordsInfo() {
-        synchronized (journal) {
-            List<Record> records = journal.getRecordsSortedByTime();
-            List<RecordInfo> result = new ArrayList<>(records.size());
-            for (Record record : records) {
-                result.add(new RecordInfo(
-                        record.getKey(),
-                        record.getName(),
-                        record.getSize(),
-                        record.getTime()
-                ));
+    private void scheduleRemovals() {
+        if (removalScheduled.compareAndSet(false, true)) {
+            final RemovalListener listener = removalListener;
+            try {
+                removalExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatchRemovals(listener);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                removalScheduled.set(false);
+                logger.log("[!] Removal notifications rejected: %s", ex.getMessage());
             }
-            return result;
         }
     }
 
+    private void dispatchRemovals(RemovalListener listener) {
+        do {
+            List<RemovalNotification> batch;
+            synchronized (removals) {
+                batch = new ArrayList<>(removals);
+                removals.clear();
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    listener.onRemoval(batch);
+                } catch (RuntimeException ex) {
+                    logger.log("[!] Removal listener failed: %s", ex.getMessage());
+                }
+            }
+            // Flag is cleared after delivery, so batches are never delivered concurrently.
+            // Notifications, added meanwhile, are delivered by this task, unless another is scheduled
+            removalScheduled.set(false);
+            synchronized (removals) {
+                if (removals.isEmpty()) {
+                    return;
+                }
+            }
+        } while (removalScheduled.compareAndSet(false, true));
+    }
+
     /**
-     * Returns information about a specific cached record without updating access time.
-     *
-     * @param key the key to look up
-     * @return RecordInfo or null if not found
+     * Computes content name and checksum of file to put, if they are enabled. Called without lock.
      */
-    public RecordInfo getRecordInfo(String key) {
+    private FileDigest digest(File file) throws IOException {
+        boolean deduplication;
+        boolean checksums;
         synchronized (journal) {
-            assertKeyValid(key);
-            Record record = journal.peek(key);
-            if (record != null) {
-                return new RecordInfo(
-                        record.getKey(),
-                        record.getName(),
-                        record.getSize(),
-                        record.getTime()
-                );
+            deduplication = this.deduplication;
+            checksums = this.checksums;
+        }
+        return digest(file, deduplication, checksums);
+    }
+
+    /**
+     * Reads file once to compute both content name and checksum.
+     */
+    private static FileDigest digest(File file, boolean deduplication, boolean checksums) throws IOException {
+        if (!deduplication && !checksums) {
+            return new FileDigest(null, Record.NO_CHECKSUM);
+        }
+        MessageDigest digest = deduplication ? contentDigest() : null;
+        CRC32 crc = checksums ? new CRC32() : null;
+        try (InputStream stream = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = stream.read(buffer)) > 0) {
+                if (digest != null) {
+                    digest.update(buffer, 0, length);
+                }
+                if (crc != null) {
+                    crc.update(buffer, 0, length);
+                }
+            }
+        }
+        return new FileDigest(digest != null ? hex(digest.digest()) + fileExtension(file.getName()) : null,
+                crc != null ? crc.getValue() : Record.NO_CHECKSUM);
+    }
+
+    private static long checksum(InputStream stream) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream input = stream) {
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = input.read(buffer)) > 0) {
+                crc.update(buffer, 0, length);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static long checksum(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        while (data.hasRemaining()) {
+            int count = Math.min(buffer.length, data.remaining());
+            data.get(buffer, 0, count);
+            crc.update(buffer, 0, count);
+        }
+        return crc.getValue();
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(String.format("File size %d bytes is too large to read", size));
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    return Arrays.copyOf(buffer.array(), buffer.position());
+                }
+            }
+            return buffer.array();
+        }
+    }
+
+    private InputStream decode(Record record, InputStream stream) throws IOException {
+        if (record.getCodec() == Codec.RAW) {
+            return stream;
+        }
+        Codec codec = codecs.get(record.getCodec());
+        if (codec == null) {
+            stream.close();
+            throw new IOException(String.format("Unknown codec %d of %s", record.getCodec(), record.getKey()));
+        }
+        return codec.decode(new BufferedInputStream(stream));
+    }
+
+    private static ByteBuffer encode(Codec codec, ByteBuffer data) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.remaining() / 2);
+        try (OutputStream stream = codec.encode(output)) {
+            byte[] buffer = new byte[8192];
+            while (data.hasRemaining()) {
+                int count = Math.min(buffer.length, data.remaining());
+                data.get(buffer, 0, count);
+                stream.write(buffer, 0, count);
+            }
+        }
+        return ByteBuffer.wrap(output.toByteArray());
+    }
+
+    private static byte[] readStream(InputStream stream) throws IOException {
+        try (InputStream input = stream) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = input.read(buffer)) > 0) {
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        }
+    }
+
+    private static void writeFile(File file, ByteBuffer data) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            channel.truncate(0);
+            long position = 0;
+            while (data.hasRemaining()) {
+                position += channel.write(data, position);
             }
-            return null;
+        }
+    }
+
+    private static void assertPrefixValid(String prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("Prefix must not be null");
         }
     }
 
@@ -204,26 +2294,52 @@ public class DiskLruCache {
         if (key == null || key.isEmpty()) {
             throw new IllegalArgumentException(String.format("Invalid key value: '%s'", key));
         }
+        if (key.indexOf(Record.CHUNK_SEPARATOR) != -1) {
+            throw new IllegalArgumentException(String.format("Invalid key value: '%s'", key));
+        }
+        // Separator is allowed only between namespace name and key, as namespace puts it
+        int index = key.indexOf(Record.NAMESPACE_SEPARATOR);
+        if (index != -1 && (index == 0 || index == key.length() - 1
+                || key.indexOf(Record.NAMESPACE_SEPARATOR, index + 1) != -1)) {
+            throw new IllegalArgumentException(String.format("Invalid key value: '%s'", key));
+        }
     }
 
     private static String keyHash(String base) {
         try {
             MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
-            byte[] bytes = digest.digest(base.getBytes(UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : bytes) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-            return hexString.toString();
+            return hex(digest.digest(base.getBytes(UTF_8)));
         } catch (NoSuchAlgorithmException ignored) {
         }
         throw new IllegalArgumentException("Unable to hash key");
     }
 
+    private static String contentName(ByteBuffer data) {
+        MessageDigest digest = contentDigest();
+        digest.update(data);
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest contentDigest() {
+        try {
+            return MessageDigest.getInstance(CONTENT_HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("Unable to hash contents", ex);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : bytes) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) {
+                hexString.append('0');
+            }
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+
     private static String generateName(String key, File file) {
         return keyHash(key) + fileExtension(file.getName());
     }
@@ -239,4 +2355,110 @@ public class DiskLruCache {
         return suffix;
     }
 
+    /**
+     * Content name and checksum of file, that is put into cache.
+     */
+    private static class FileDigest {
+
+        final String contentName;
+        final long checksum;
+
+        FileDigest(String contentName, long checksum) {
+            this.contentName = contentName;
+            this.checksum = checksum;
+        }
+
+    }
+
+    /**
+     * Iterator over keys with prefix, that fetches keys in batches, each under lock.
+     */
+    private class KeyIterator implements Iterator<String> {
+
+        private final String namespace;
+        private final String prefix;
+        private final Deque<String> batch = new ArrayDeque<>();
+        private String last;
+        private boolean exhausted = false;
+
+        KeyIterator(String namespace, String prefix) {
+            this.namespace = namespace;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (batch.isEmpty() && !exhausted) {
+                fetch();
+            }
+            return !batch.isEmpty();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return batch.poll();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void fetch() {
+            List<Record> records;
+            synchronized (journal) {
+                refresh();
+                records = journal.getRecordsWithPrefix(namespace, prefix, last, ITERATION_BATCH_SIZE);
+            }
+            exhausted = records.size() < ITERATION_BATCH_SIZE;
+            for (Record record : records) {
+                last = record.getLocalKey();
+                if (!record.isChunk()) {
+                    batch.add(last);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Iterator over records information, that fetches records in pages, each under lock.
+     */
+    private class RecordIterator implements Iterator<RecordInfo> {
+
+        private final Deque<RecordInfo> page = new ArrayDeque<>();
+        private RecordInfo last;
+        private boolean exhausted = false;
+
+        @Override
+        public boolean hasNext() {
+            if (page.isEmpty() && !exhausted) {
+                List<RecordInfo> records = getRecordsInfo(last, ITERATION_BATCH_SIZE);
+                exhausted = records.size() < ITERATION_BATCH_SIZE;
+                if (!records.isEmpty()) {
+                    last = records.get(records.size() - 1);
+                    page.addAll(records);
+                }
+            }
+            return !page.isEmpty();
+        }
+
+        @Override
+        public RecordInfo next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.poll();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
 }
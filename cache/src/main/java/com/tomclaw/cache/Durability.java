@@ -0,0 +1,24 @@
+package com.tomclaw.cache;
+
+/**
+ * Defines, when cached contents and journal are flushed to storage device,
+ * so they survive power loss.
+ */
+public enum Durability {
+
+    /**
+     * Flushing is left to operating system. Fastest, but recently put files
+     * may be lost or truncated after power loss.
+     */
+    NONE,
+    /**
+     * Contents and journal are flushed on each put before it returns.
+     */
+    ON_COMMIT,
+    /**
+     * Contents and journal are flushed periodically in background, so at most
+     * the last interval of changes is lost after power loss.
+     */
+    BATCHED
+
+}
@@ -0,0 +1,52 @@
+package com.tomclaw.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+
+/**
+ * Flushes files and directories to storage device.
+ */
+class FileSync {
+
+    private FileSync() {
+    }
+
+    static void force(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.getChannel().force(true);
+        }
+    }
+
+    /**
+     * Flushes directory entries, so renames in directory survive power loss.
+     * Directory can't be opened before Java 7 and Android 8, and on some platforms,
+     * so flushing is skipped there.
+     *
+     * @return true if directory is flushed
+     */
+    static boolean syncDirectory(File dir) {
+        if (dir == null) {
+            return false;
+        }
+        try {
+            Object path = File.class.getMethod("toPath").invoke(dir);
+            Class<?> pathClass = Class.forName("java.nio.file.Path");
+            Class<?> optionClass = Class.forName("java.nio.file.OpenOption");
+            Class<?> standardOptionClass = Class.forName("java.nio.file.StandardOpenOption");
+            Object options = Array.newInstance(optionClass, 1);
+            Array.set(options, 0, standardOptionClass.getField("READ").get(null));
+            Method open = FileChannel.class.getMethod("open", pathClass, options.getClass());
+            try (FileChannel channel = (FileChannel) open.invoke(null, path, options)) {
+                channel.force(true);
+            }
+            return true;
+        } catch (Exception | LinkageError ignored) {
+            return false;
+        }
+    }
+
+}
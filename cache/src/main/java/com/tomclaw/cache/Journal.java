@@ -11,37 +11,163 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 @SuppressWarnings({"unused", "WeakerAccess"})
 class Journal {
 
-    public static final int JOURNAL_FORMAT_VERSION = 1;
+    public static final int JOURNAL_FORMAT_VERSION = 4;
 
     private final File file;
     private final FileManager fileManager;
     private final Logger logger;
     private final Map<String, Record> map = new HashMap<>();
+    private final TreeSet<String> sortedKeys = new TreeSet<>();
+    private final TreeSet<Record> lruIndex = new TreeSet<>(new RecordComparator());
+    private final Map<Priority, TreeSet<Record>> evictionQueues = new EnumMap<>(Priority.class);
+    private long sequence = 0;
+    private final Map<String, Integer> references = new HashMap<>();
     private long totalSize = 0;
+    private long changeCount = 0;
+    private long journalSize = 0;
+    private int maxCount = Integer.MAX_VALUE;
+    private boolean atomic = false;
+    private long pinnedSize = 0;
+    private int pinnedCount = 0;
+    private long pinnedLimit = -1;
+    private final Map<String, Long> namespaceSizes = new HashMap<>();
+    private final Map<String, Long> namespacePinnedSizes = new HashMap<>();
+    private final Map<String, Integer> namespaceWeights = new HashMap<>();
+    private final Map<String, Long> namespaceQuotas = new HashMap<>();
+    private volatile BloomFilter filter = new BloomFilter(0);
+    private int deletedCount = 0;
 
     private Journal(File file, FileManager fileManager, Logger logger) {
         this.file = file;
         this.fileManager = fileManager;
         this.logger = logger;
+        for (Priority priority : Priority.values()) {
+            if (priority != Priority.PINNED) {
+                evictionQueues.put(priority, new TreeSet<>(new RecordComparator()));
+            }
+        }
     }
 
-    public void put(Record record, long cacheSize) throws IOException {
+    /**
+     * Puts record evicting least recently used ones if needed.
+     *
+     * @return records evicted to free space for the new one
+     */
+    public List<Record> put(Record record, long cacheSize) throws IOException {
         long fileSize = record.getSize();
-        prepare(fileSize, cacheSize);
+        // Pinned size is accounted per record, even if its file is shared with another key
+        if (record.isPinned()) {
+            assertPinnable(fileSize, cacheSize);
+        }
+        if (isReferenced(record.getName())) {
+            // File is already stored and accounted for another key,
+            // so record is put first to protect file from eviction
+            put(record);
+            return trim(Long.MAX_VALUE, Integer.MAX_VALUE);
+        }
+        List<Record> evicted = prepare(fileSize, 1, cacheSize);
         put(record);
+        return evicted;
+    }
+
+    /**
+     * Puts several records, evicting least recently used ones once for their total size.
+     *
+     * @return records evicted to free space for the new ones
+     */
+    public List<Record> putAll(List<Record> records, long cacheSize) throws IOException {
+        List<Record> pending = new ArrayList<>(records.size());
+        Set<String> names = new HashSet<>();
+        long size = 0;
+        for (Record record : records) {
+            if (!isReferenced(record.getName())) {
+                if (names.add(record.getName())) {
+                    size += record.getSize();
+                }
+                pending.add(record);
+            }
+        }
+        assertFits(size, records.size(), cacheSize);
+        for (Record record : records) {
+            if (isReferenced(record.getName())) {
+                // Referenced files are put first, so they are protected from eviction
+                put(record);
+            }
+        }
+        List<Record> evicted = prepare(size, pending.size(), cacheSize);
+        for (Record record : pending) {
+            put(record);
+        }
+        return evicted;
+    }
+
+    /**
+     * Checks, that specified files fit into cache with its pinned files.
+     *
+     * @throws IOException if files exceed cache size or max count
+     */
+    public void assertFits(long size, int count, long cacheSize) throws IOException {
+        if (count > maxCount) {
+            throw new IOException(String.format(
+                    "Files count %d exceeds max count %d", count, maxCount));
+        }
+        if (size > cacheSize) {
+            throw new IOException(String.format(
+                    "Files size %d bytes exceeds cache size %d bytes", size, cacheSize));
+        }
+        assertEvictable(size, count, cacheSize);
+    }
+
+    /**
+     * Checks, that space for specified files may be freed by eviction of files, that are not pinned.
+     */
+    private void assertEvictable(long size, int count, long cacheSize) throws IOException {
+        if (pinnedSize + size > cacheSize || pinnedCount + count > maxCount) {
+            throw new IOException(String.format(
+                    "Not enough space for %d bytes, %d bytes are pinned", size, pinnedSize));
+        }
+    }
+
+    private void assertPinnable(long size, long cacheSize) throws IOException {
+        long limit = pinnedLimit >= 0 ? pinnedLimit : cacheSize / 2;
+        if (pinnedSize + size > limit) {
+            throw new IOException(String.format(
+                    "Pinned size %d bytes exceeds pinned size limit %d bytes", pinnedSize + size, limit));
+        }
     }
 
     private void put(Record record) {
-        map.put(record.getKey(), record);
-        totalSize += record.getSize();
+        sequence++;
+        record = new Record(record, record.getTime(), sequence, sequence);
+        changeCount++;
+        Record old = map.put(record.getKey(), record);
+        if (old != null) {
+            unindex(old);
+        }
+        index(record);
+        sortedKeys.add(record.getKey());
+        filter.add(record.getKey());
+        if (filter.isSaturated()) {
+            rebuildFilter();
+        }
+        addNamespaceSize(record.getNamespace(), record.getSize());
+        addPinned(record, 1);
+        if (addReference(record.getName()) == 1) {
+            totalSize += record.getSize();
+        }
         logger.log("[+] Put %s (%d bytes) and cache size became %d bytes",
                 record.getKey(), record.getSize(), totalSize);
     }
@@ -63,109 +189,570 @@ class Journal {
         return map.get(key);
     }
 
+    /**
+     * Returns false if there is definitely no record with specified key. May be called
+     * without journal lock, so misses are answered without waiting for other operations.
+     */
+    public boolean mightContain(String key) {
+        return filter.mightContain(key);
+    }
+
+    private void rebuildFilter() {
+        BloomFilter filter = new BloomFilter(map.size() * 2);
+        for (String key : map.keySet()) {
+            filter.add(key);
+        }
+        this.filter = filter;
+        deletedCount = 0;
+    }
+
+    /**
+     * Returns snapshot of all records in no particular order.
+     */
+    public List<Record> getRecords() {
+        return new ArrayList<>(map.values());
+    }
+
+    /**
+     * Changes name of file, record contents are stored in, keeping the rest of record.
+     *
+     * @return updated record or null if there is no record with specified key
+     */
+    public Record rename(String key, String name) {
+        Record record = map.get(key);
+        if (record == null) {
+            return null;
+        }
+        Record renamed = new Record(record, name);
+        changeCount++;
+        map.put(key, renamed);
+        unindex(record);
+        index(renamed);
+        if (removeReference(record.getName()) == 0) {
+            totalSize -= record.getSize();
+        }
+        if (addReference(name) == 1) {
+            totalSize += record.getSize();
+        }
+        return renamed;
+    }
+
     /**
      * Returns all records sorted by access time (most recent first).
      */
     public List<Record> getRecordsSortedByTime() {
-        List<Record> records = new ArrayList<>(map.values());
-        Collections.sort(records, new RecordComparator());
-        return records;
+        return new ArrayList<>(lruIndex);
+    }
+
+    /**
+     * Returns page of records sorted by access time (most recent first).
+     *
+     * @param after record to continue after or null to start from the most recent one
+     * @param limit maximum count of records to return
+     */
+    public List<Record> getRecordsPage(Record after, int limit) {
+        Set<Record> records = after == null ? lruIndex : lruIndex.tailSet(after, false);
+        List<Record> page = new ArrayList<>(Math.min(limit, records.size()));
+        for (Record record : records) {
+            if (page.size() >= limit) {
+                break;
+            }
+            page.add(record);
+        }
+        return page;
     }
 
     public Record delete(String key) {
         Record record = map.remove(key);
         if (record != null) {
-            totalSize -= record.getSize();
+            changeCount++;
+            sortedKeys.remove(key);
+            unindex(record);
+            addNamespaceSize(record.getNamespace(), -record.getSize());
+            addPinned(record, -1);
+            if (removeReference(record.getName()) == 0) {
+                totalSize -= record.getSize();
+            }
+            // Deleted keys stay in filter and raise false positive rate
+            if (++deletedCount > map.size()) {
+                rebuildFilter();
+            }
         }
         return record;
     }
 
+    /**
+     * Checks whether file is referenced by any record.
+     * Shared file must not be deleted until the last record referencing it is removed.
+     */
+    public boolean isReferenced(String name) {
+        return references.containsKey(name);
+    }
+
+    private int addReference(String name) {
+        Integer count = references.get(name);
+        int result = count == null ? 1 : count + 1;
+        references.put(name, result);
+        return result;
+    }
+
+    private int removeReference(String name) {
+        Integer count = references.get(name);
+        int result = count == null ? 0 : count - 1;
+        if (result > 0) {
+            references.put(name, result);
+        } else {
+            references.remove(name);
+        }
+        return result;
+    }
+
     public Set<String> keySet() {
         return Collections.unmodifiableSet(map.keySet());
     }
 
+    /**
+     * Returns offsets of chunks of specified entry.
+     */
+    public SortedSet<Long> getChunkOffsets(String key) {
+        SortedSet<Long> offsets = new TreeSet<>();
+        String prefix = key + Record.CHUNK_SEPARATOR;
+        for (String chunkKey : sortedKeys.tailSet(prefix)) {
+            if (!chunkKey.startsWith(prefix)) {
+                break;
+            }
+            // Key of entry may contain separator too, so the last one is taken
+            if (chunkKey.lastIndexOf(Record.CHUNK_SEPARATOR) == key.length()) {
+                offsets.add(Long.parseLong(chunkKey.substring(prefix.length())));
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Returns records of specified namespace, which keys start with prefix, in order of keys.
+     * Only matching keys are visited, so cost is proportional to count of matching records.
+     * Keys of each namespace, which name starts with prefix, follow each other in order of keys,
+     * so they are skipped at once, when default namespace is listed.
+     *
+     * @param after key within namespace to continue after or null to start from the first one
+     * @param limit maximum count of records to return
+     */
+    public List<Record> getRecordsWithPrefix(String namespace, String prefix, String after, int limit) {
+        String from = Record.namespacedKey(namespace, prefix);
+        String key = after == null
+                ? sortedKeys.ceiling(from)
+                : sortedKeys.higher(Record.namespacedKey(namespace, after));
+        List<Record> records = new ArrayList<>();
+        while (key != null && records.size() < limit && key.startsWith(from)) {
+            Record record = map.get(key);
+            if (record.getNamespace().equals(namespace)) {
+                records.add(record);
+                key = sortedKeys.higher(key);
+            } else {
+                // Keys of default namespace may be prefixes of namespaced keys
+                key = sortedKeys.ceiling(record.getNamespace() + (char) (Record.NAMESPACE_SEPARATOR + 1));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Returns snapshot of keys in specified namespace without namespace prefix.
+     */
+    public Set<String> keySet(String namespace) {
+        Set<String> keys = new HashSet<>();
+        for (Record record : map.values()) {
+            if (record.getNamespace().equals(namespace) && !record.isChunk()) {
+                keys.add(record.getLocalKey());
+            }
+        }
+        return keys;
+    }
+
     private void updateTime(Record record) {
         long time = System.currentTimeMillis();
-        map.put(record.getKey(), new Record(record, time));
+        Record updated = new Record(record, time, ++sequence);
+        unindex(record);
+        map.put(record.getKey(), updated);
+        index(updated);
     }
 
-    private void prepare(long fileSize, long cacheSize) throws IOException {
+    private List<Record> prepare(long fileSize, int count, long cacheSize) throws IOException {
         if (fileSize > cacheSize) {
             throw new IOException(String.format(
                     "File size %d bytes exceeds cache size %d bytes", fileSize, cacheSize));
         }
-        if (totalSize + fileSize > cacheSize) {
+        assertEvictable(fileSize, count, cacheSize);
+        if (totalSize + fileSize > cacheSize || map.size() + count > maxCount) {
             logger.log("[!] File %d bytes is not fit in cache %d bytes", fileSize, totalSize);
-            List<Record> records = new ArrayList<>(map.values());
-            Collections.sort(records, new RecordComparator());
-            for (int c = records.size() - 1; c >= 0; c--) {
-                Record record = records.remove(c);
-                long nextTotalSize = totalSize - record.getSize();
-                logger.log("[x] Delete %s [%d ms] %d bytes and free cache to %d bytes",
-                        record.getKey(), record.getTime(), record.getSize(), nextTotalSize);
-                fileManager.delete(record.getName());
-                map.remove(record.getKey());
-                totalSize = nextTotalSize;
-
-                if (totalSize + fileSize <= cacheSize) {
-                    break;
+            return evict(cacheSize - fileSize, maxCount - count, Integer.MAX_VALUE);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Evicts least recently used records until total size fits specified size
+     * and records count fits max count.
+     *
+     * @param size      size to fit
+     * @param batchSize maximum count of records to evict
+     * @return evicted records
+     */
+    public List<Record> trim(long size, int batchSize) throws IOException {
+        if (!exceeds(size)) {
+            return Collections.emptyList();
+        }
+        return evict(size, maxCount, batchSize);
+    }
+
+    /**
+     * Checks whether total size exceeds specified size or records count exceeds max count.
+     */
+    public boolean exceeds(long size) {
+        return totalSize > size || map.size() > maxCount;
+    }
+
+    private List<Record> evict(long size, int count, int batchSize) throws IOException {
+        List<Record> evicted = new ArrayList<>();
+        boolean fair = !namespaceWeights.isEmpty() || !namespaceQuotas.isEmpty();
+        Map<String, EvictionCursor> cursors = new HashMap<>();
+        EvictionCursor cursor = new EvictionCursor(null);
+        while (evicted.size() < batchSize && (totalSize > size || map.size() > count)) {
+            Record record = null;
+            String namespace = fair ? findOverusedNamespace(size) : null;
+            if (namespace != null) {
+                EvictionCursor namespaceCursor = cursors.get(namespace);
+                if (namespaceCursor == null) {
+                    namespaceCursor = new EvictionCursor(namespace);
+                    cursors.put(namespace, namespaceCursor);
                 }
+                record = namespaceCursor.next();
             }
+            if (record == null) {
+                record = cursor.next();
+            }
+            if (record == null) {
+                break;
+            }
+            map.remove(record.getKey());
+            changeCount++;
+            sortedKeys.remove(record.getKey());
+            unindex(record);
+            deletedCount++;
+            addNamespaceSize(record.getNamespace(), -record.getSize());
+            if (removeReference(record.getName()) == 0) {
+                // Packed entries are released by packed storage on invalidation
+                if (!record.isPacked()) {
+                    fileManager.delete(record.getName());
+                }
+                totalSize -= record.getSize();
+            }
+            logger.log("[x] Delete %s [%d ms] %d bytes and free cache to %d bytes",
+                    record.getKey(), record.getTime(), record.getSize(), totalSize);
+            evicted.add(record);
+        }
+        if (deletedCount > map.size()) {
+            rebuildFilter();
+        }
+        return evicted;
+    }
+
+    private void index(Record record) {
+        lruIndex.add(record);
+        if (!record.isPinned()) {
+            evictionQueues.get(record.getPriority()).add(record);
+        }
+    }
+
+    private void unindex(Record record) {
+        lruIndex.remove(record);
+        if (!record.isPinned()) {
+            evictionQueues.get(record.getPriority()).remove(record);
+        }
+    }
+
+    /**
+     * Returns namespace, that exceeds its share of specified size the most.
+     * Share is defined by namespace quota or by its weight among namespaces, that have records.
+     * Pinned records are not accounted, so namespace without evictable records is never returned.
+     */
+    private String findOverusedNamespace(long size) {
+        long totalWeight = 0;
+        for (String namespace : namespaceSizes.keySet()) {
+            if (!namespaceQuotas.containsKey(namespace) && getEvictableSize(namespace) > 0) {
+                totalWeight += getNamespaceWeight(namespace);
+            }
+        }
+        // Pinned files can't be evicted, so space is shared among files, that can
+        long evictableSize = Math.max(size - pinnedSize, 0);
+        String result = null;
+        double maxRatio = 1;
+        for (Map.Entry<String, Long> entry : namespaceSizes.entrySet()) {
+            String namespace = entry.getKey();
+            long used = getEvictableSize(namespace);
+            if (used <= 0) {
+                continue;
+            }
+            Long quota = namespaceQuotas.get(namespace);
+            double share = quota != null
+                    ? quota : (double) evictableSize * getNamespaceWeight(namespace) / totalWeight;
+            double ratio = share > 0 ? used / share : Double.MAX_VALUE;
+            if (ratio > maxRatio) {
+                maxRatio = ratio;
+                result = namespace;
+            }
+        }
+        return result;
+    }
+
+    private long getEvictableSize(String namespace) {
+        return getSize(namespaceSizes, namespace) - getSize(namespacePinnedSizes, namespace);
+    }
+
+    private void addPinned(Record record, int sign) {
+        if (record.isPinned()) {
+            pinnedSize += sign * record.getSize();
+            pinnedCount += sign;
+            addSize(namespacePinnedSizes, record.getNamespace(), sign * record.getSize());
+        }
+    }
+
+    /**
+     * Changes priority of record.
+     *
+     * @return updated record or null if there is no record with specified key
+     * @throws IOException if record is pinned and pinned size limit is exceeded
+     */
+    public Record setPriority(String key, Priority priority, long cacheSize) throws IOException {
+        Record record = map.get(key);
+        if (record == null) {
+            return null;
+        }
+        if (priority == Priority.PINNED && !record.isPinned()) {
+            assertPinnable(record.getSize(), cacheSize);
+        }
+        Record updated = new Record(record, priority);
+        addPinned(record, -1);
+        changeCount++;
+        map.put(key, updated);
+        unindex(record);
+        index(updated);
+        addPinned(updated, 1);
+        return updated;
+    }
+
+    /**
+     * Sets limit of pinned files size.
+     *
+     * @param limit limit in bytes or negative value to limit pinned files with half of cache size
+     */
+    public void setPinnedLimit(long limit) {
+        this.pinnedLimit = limit;
+    }
+
+    public long getPinnedSize() {
+        return pinnedSize;
+    }
+
+    private void addNamespaceSize(String namespace, long delta) {
+        addSize(namespaceSizes, namespace, delta);
+    }
+
+    private static void addSize(Map<String, Long> sizes, String namespace, long delta) {
+        long result = getSize(sizes, namespace) + delta;
+        if (result > 0) {
+            sizes.put(namespace, result);
+        } else {
+            sizes.remove(namespace);
+        }
+    }
+
+    private static long getSize(Map<String, Long> sizes, String namespace) {
+        Long size = sizes.get(namespace);
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * Returns total size of records in namespace. Shared files are accounted for each record.
+     */
+    public long getNamespaceSize(String namespace) {
+        return getSize(namespaceSizes, namespace);
+    }
+
+    public void setNamespaceWeight(String namespace, int weight) {
+        namespaceWeights.put(namespace, weight);
+    }
+
+    public int getNamespaceWeight(String namespace) {
+        Integer weight = namespaceWeights.get(namespace);
+        return weight == null ? 1 : weight;
+    }
+
+    /**
+     * Sets soft quota of namespace. Namespace may exceed its quota, while there is free space,
+     * but its records are evicted first, when space is needed.
+     *
+     * @param quota quota in bytes or negative value to use namespace weight instead
+     */
+    public void setNamespaceQuota(String namespace, long quota) {
+        if (quota < 0) {
+            namespaceQuotas.remove(namespace);
+        } else {
+            namespaceQuotas.put(namespace, quota);
         }
     }
 
+    /**
+     * Sets maximum count of records. Exceeding records are evicted on the next put or trim.
+     */
+    public void setMaxCount(int maxCount) {
+        this.maxCount = maxCount;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public int getCount() {
+        return map.size();
+    }
+
     public long getTotalSize() {
         return totalSize;
     }
 
+    /**
+     * Returns size of journal file, as it was written or read the last time.
+     */
     public long getJournalSize() {
-        return file.length();
+        return journalSize;
+    }
+
+    /**
+     * Returns access time of the least recently used record or 0 if there are no records.
+     */
+    public long getOldestTime() {
+        return lruIndex.isEmpty() ? 0 : lruIndex.last().getTime();
     }
 
-    private void setTotalSize(long totalSize) {
-        this.totalSize = totalSize;
+    /**
+     * Returns count of changes of records set made by this instance: puts, deletes, evictions,
+     * renames and priority changes. Access time updates are not counted.
+     */
+    public long getChangeCount() {
+        return changeCount;
     }
 
     public void writeJournal() {
-        try (FileOutputStream fileStream = new FileOutputStream(file)) {
-            try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(fileStream))) {
-                stream.writeShort(JOURNAL_FORMAT_VERSION);
-                stream.writeInt(map.size());
-                for (Record record : map.values()) {
-                    stream.writeUTF(record.getKey());
-                    stream.writeUTF(record.getName());
-                    stream.writeLong(record.getTime());
-                    stream.writeLong(record.getSize());
-                }
+        writeJournal(false);
+    }
+
+    /**
+     * Writes journal and flushes it to storage device.
+     */
+    public void sync() {
+        writeJournal(true);
+    }
+
+    /**
+     * Sets whether journal is written to temporary file, which replaces journal atomically,
+     * so journal is never truncated or torn in place. Flushed journal is always replaced atomically.
+     */
+    public void setAtomic(boolean atomic) {
+        this.atomic = atomic;
+    }
+
+    private void writeJournal(boolean durable) {
+        boolean replace = atomic || durable;
+        File target = replace ? new File(file.getPath() + DiskLruCache.TEMP_SUFFIX) : file;
+        long size;
+        try (FileOutputStream fileStream = new FileOutputStream(target)) {
+            DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(fileStream));
+            stream.writeShort(JOURNAL_FORMAT_VERSION);
+            stream.writeInt(map.size());
+            // Records are written in order of access, so order of records with the same time is kept
+            for (Record record : lruIndex.descendingSet()) {
+                stream.writeUTF(record.getKey());
+                stream.writeUTF(record.getName());
+                stream.writeLong(record.getTime());
+                stream.writeLong(record.getSize());
+                stream.writeByte(record.getCodec());
+                stream.writeByte(record.getPriority().ordinal());
+                stream.writeLong(record.getChecksum());
+            }
+            stream.flush();
+            size = stream.size();
+            if (durable) {
+                fileStream.getChannel().force(true);
             }
         } catch (IOException ex) {
             logger.log("[.] Failed to write journal %s", ex.getMessage());
             ex.printStackTrace();
+            return;
         }
+        if (replace) {
+            // Rename doesn't replace existing file on some platforms
+            if (!target.renameTo(file) && !(file.delete() && target.renameTo(file))) {
+                logger.log("[.] Failed to replace journal with %s", target.getName());
+                return;
+            }
+        }
+        if (durable) {
+            // Also persists renames of files, put into cache directory since the last flush
+            FileSync.syncDirectory(file.getParentFile());
+        }
+        journalSize = size;
     }
 
     public static Journal readJournal(FileManager fileManager, Logger logger) {
         File file = fileManager.journal();
-        logger.log("[.] Start journal reading", file.getName());
         Journal journal = new Journal(file, fileManager, logger);
+        journal.read();
+        return journal;
+    }
+
+    /**
+     * Drops in-memory state and reads journal file again.
+     * Used to pick up changes made by another process.
+     */
+    public void reload() {
+        map.clear();
+        sortedKeys.clear();
+        lruIndex.clear();
+        for (TreeSet<Record> queue : evictionQueues.values()) {
+            queue.clear();
+        }
+        references.clear();
+        namespaceSizes.clear();
+        namespacePinnedSizes.clear();
+        pinnedSize = 0;
+        pinnedCount = 0;
+        totalSize = 0;
+        read();
+    }
+
+    private void read() {
+        logger.log("[.] Start journal reading", file.getName());
         try (FileInputStream fileStream = new FileInputStream(file)) {
             try (DataInputStream stream = new DataInputStream(new BufferedInputStream(fileStream))) {
                 int version = stream.readShort();
-                if (version != JOURNAL_FORMAT_VERSION) {
+                if (version < 1 || version > JOURNAL_FORMAT_VERSION) {
                     throw new IllegalArgumentException("Invalid journal format version");
                 }
                 int count = stream.readInt();
-                long totalSize = 0;
                 for (int c = 0; c < count; c++) {
                     String key = stream.readUTF();
                     String name = stream.readUTF();
                     long time = stream.readLong();
                     long size = stream.readLong();
-                    totalSize += size;
-                    Record record = new Record(key, name, time, size);
-                    journal.put(record);
+                    int codec = version >= 2 ? stream.readUnsignedByte() : Codec.RAW;
+                    Priority priority = version >= 3
+                            ? Priority.values()[stream.readUnsignedByte()] : Priority.NORMAL;
+                    long checksum = version >= 4 ? stream.readLong() : Record.NO_CHECKSUM;
+                    Record record = new Record(key, name, time, size, codec, priority, checksum);
+                    put(record);
                 }
-                journal.setTotalSize(totalSize);
                 logger.log("[.] Journal read. Files count is %d and total size is %d", count, totalSize);
             }
         } catch (FileNotFoundException ignored) {
@@ -174,7 +761,52 @@ class Journal {
             logger.log("[.] Failed to read journal %s", ex.getMessage());
             ex.printStackTrace();
         }
-        return journal;
+        journalSize = file.length();
+        rebuildFilter();
+    }
+
+    /**
+     * Walks records, that may be evicted, from the lowest priority to the highest one,
+     * and within priority from the least recently used record. Records are visited lazily,
+     * so eviction of a few records doesn't depend on count of records. Walk continues from
+     * the last visited record, even if it was removed meanwhile.
+     */
+    private class EvictionCursor {
+
+        private final String namespace;
+        private final Iterator<TreeSet<Record>> queues = evictionQueues.values().iterator();
+        private TreeSet<Record> queue;
+        private Record position;
+
+        /**
+         * @param namespace namespace of records to visit or null to visit records of all namespaces
+         */
+        EvictionCursor(String namespace) {
+            this.namespace = namespace;
+        }
+
+        Record next() {
+            while (true) {
+                if (queue != null) {
+                    Record record = position == null
+                            ? (queue.isEmpty() ? null : queue.last())
+                            : queue.lower(position);
+                    while (record != null && namespace != null && !namespace.equals(record.getNamespace())) {
+                        record = queue.lower(record);
+                    }
+                    if (record != null) {
+                        position = record;
+                        return record;
+                    }
+                }
+                if (!queues.hasNext()) {
+                    return null;
+                }
+                queue = queues.next();
+                position = null;
+            }
+        }
+
     }
 
 }
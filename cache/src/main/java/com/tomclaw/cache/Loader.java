@@ -0,0 +1,17 @@
+package com.tomclaw.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Loads file, that is missing in cache. Loaded file is moved into cache.
+ */
+public interface Loader {
+
+    /**
+     * @param key the key of missing file
+     * @return loaded file or null if there is nothing to load for specified key
+     */
+    File load(String key) throws IOException;
+
+}
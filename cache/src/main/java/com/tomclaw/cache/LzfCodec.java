@@ -0,0 +1,313 @@
+package com.tomclaw.cache;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Fast codec of LZF family. Contents are split into blocks, each block is
+ * compressed independently and stored raw if it is not compressible.
+ */
+@SuppressWarnings("WeakerAccess")
+public class LzfCodec implements Codec {
+
+    public static final int ID = 2;
+
+    static final int BLOCK_SIZE = 0xffff;
+
+    private static final int BLOCK_RAW = 0;
+    private static final int BLOCK_COMPRESSED = 1;
+
+    private static final int HASH_BITS = 14;
+    private static final int MAX_LITERAL = 32;
+    private static final int MAX_OFFSET = 8192;
+    private static final int MAX_MATCH = 264;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public OutputStream encode(OutputStream stream) {
+        return new LzfOutputStream(stream);
+    }
+
+    @Override
+    public InputStream decode(InputStream stream) {
+        return new LzfInputStream(stream);
+    }
+
+    /**
+     * Compresses input into output buffer.
+     *
+     * @return compressed length or zero if it does not fit output buffer
+     */
+    static int compress(byte[] in, int inLength, byte[] out) {
+        int[] table = new int[1 << HASH_BITS];
+        int outLimit = out.length;
+        int ip = 0;
+        int op = 1;
+        int literals = 0;
+        while (ip < inLength) {
+            if (ip + 2 < inLength) {
+                int hash = hash(in, ip);
+                int ref = table[hash] - 1;
+                table[hash] = ip + 1;
+                int offset = ip - ref - 1;
+                if (ref >= 0 && offset < MAX_OFFSET
+                        && in[ref] == in[ip] && in[ref + 1] == in[ip + 1] && in[ref + 2] == in[ip + 2]) {
+                    int maxLength = Math.min(inLength - ip, MAX_MATCH);
+                    int length = 3;
+                    while (length < maxLength && in[ref + length] == in[ip + length]) {
+                        length++;
+                    }
+                    if (op + 4 > outLimit) {
+                        return 0;
+                    }
+                    if (literals > 0) {
+                        out[op - literals - 1] = (byte) (literals - 1);
+                    } else {
+                        op--;
+                    }
+                    int code = length - 2;
+                    if (code < 7) {
+                        out[op++] = (byte) ((offset >> 8) + (code << 5));
+                    } else {
+                        out[op++] = (byte) ((offset >> 8) + (7 << 5));
+                        out[op++] = (byte) (code - 7);
+                    }
+                    out[op++] = (byte) offset;
+                    op++;
+                    literals = 0;
+                    ip += length;
+                    continue;
+                }
+            }
+            if (op + 1 > outLimit) {
+                return 0;
+            }
+            out[op++] = in[ip++];
+            if (++literals == MAX_LITERAL) {
+                out[op - literals - 1] = (byte) (literals - 1);
+                literals = 0;
+                op++;
+            }
+        }
+        if (literals > 0) {
+            out[op - literals - 1] = (byte) (literals - 1);
+        } else {
+            op--;
+        }
+        return op;
+    }
+
+    /**
+     * Decompresses input into output buffer.
+     *
+     * @return decompressed length
+     */
+    static int decompress(byte[] in, int inLength, byte[] out) throws IOException {
+        int ip = 0;
+        int op = 0;
+        try {
+            while (ip < inLength) {
+                int control = in[ip++] & 0xff;
+                if (control < MAX_LITERAL) {
+                    int length = control + 1;
+                    System.arraycopy(in, ip, out, op, length);
+                    ip += length;
+                    op += length;
+                } else {
+                    int length = control >> 5;
+                    if (length == 7) {
+                        length += in[ip++] & 0xff;
+                    }
+                    length += 2;
+                    int ref = op - ((control & 0x1f) << 8) - (in[ip++] & 0xff) - 1;
+                    if (ref < 0) {
+                        throw new IOException("Corrupted compressed block");
+                    }
+                    for (int c = 0; c < length; c++) {
+                        out[op++] = out[ref++];
+                    }
+                }
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            throw new IOException("Corrupted compressed block");
+        }
+        return op;
+    }
+
+    private static int hash(byte[] in, int ip) {
+        int value = ((in[ip] & 0xff) << 16) | ((in[ip + 1] & 0xff) << 8) | (in[ip + 2] & 0xff);
+        return (value * 0x9e3779b1) >>> (32 - HASH_BITS);
+    }
+
+    private static class LzfOutputStream extends OutputStream {
+
+        private final OutputStream stream;
+        private final byte[] buffer = new byte[BLOCK_SIZE];
+        private final byte[] compressed = new byte[BLOCK_SIZE];
+        private int length = 0;
+        private boolean closed = false;
+
+        LzfOutputStream(OutputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == buffer.length) {
+                writeBlock();
+            }
+            buffer[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == buffer.length) {
+                    writeBlock();
+                }
+                int count = Math.min(len, buffer.length - length);
+                System.arraycopy(b, off, buffer, length, count);
+                length += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeBlock();
+            stream.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                try {
+                    writeBlock();
+                } finally {
+                    stream.close();
+                }
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (length == 0) {
+                return;
+            }
+            int compressedLength = compress(buffer, length, compressed);
+            if (compressedLength > 0 && compressedLength < length) {
+                stream.write(BLOCK_COMPRESSED);
+                writeShort(length);
+                writeShort(compressedLength);
+                stream.write(compressed, 0, compressedLength);
+            } else {
+                stream.write(BLOCK_RAW);
+                writeShort(length);
+                stream.write(buffer, 0, length);
+            }
+            length = 0;
+        }
+
+        private void writeShort(int value) throws IOException {
+            stream.write(value >> 8);
+            stream.write(value);
+        }
+
+    }
+
+    private static class LzfInputStream extends InputStream {
+
+        private final InputStream stream;
+        private final byte[] buffer = new byte[BLOCK_SIZE];
+        private final byte[] compressed = new byte[BLOCK_SIZE];
+        private int position = 0;
+        private int length = 0;
+
+        LzfInputStream(InputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == length && !readBlock()) {
+                return -1;
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == length && !readBlock()) {
+                return -1;
+            }
+            int count = Math.min(len, length - position);
+            System.arraycopy(buffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+
+        private boolean readBlock() throws IOException {
+            int type = stream.read();
+            if (type < 0) {
+                return false;
+            }
+            int rawLength = readShort();
+            if (type == BLOCK_RAW) {
+                readFully(buffer, rawLength);
+            } else if (type == BLOCK_COMPRESSED) {
+                int compressedLength = readShort();
+                readFully(compressed, compressedLength);
+                if (decompress(compressed, compressedLength, buffer) != rawLength) {
+                    throw new IOException("Corrupted compressed block");
+                }
+            } else {
+                throw new IOException("Unknown block type " + type);
+            }
+            position = 0;
+            length = rawLength;
+            return true;
+        }
+
+        private int readShort() throws IOException {
+            int high = stream.read();
+            int low = stream.read();
+            if ((high | low) < 0) {
+                throw new EOFException();
+            }
+            return (high << 8) | low;
+        }
+
+        private void readFully(byte[] b, int len) throws IOException {
+            int off = 0;
+            while (off < len) {
+                int count = stream.read(b, off, len - off);
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                off += count;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.tomclaw.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-heap LRU storage for contents of small cache entries.
+ * Not thread-safe, must be guarded by journal lock.
+ */
+class MemoryCache {
+
+    private final Map<String, byte[]> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxSize;
+    private final long maxEntrySize;
+    private long size = 0;
+
+    MemoryCache(long maxSize, long maxEntrySize) {
+        this.maxSize = maxSize;
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    public byte[] get(String key) {
+        return map.get(key);
+    }
+
+    /**
+     * Stores entry contents, if it is small enough.
+     * Least recently used entries are dropped to fit memory budget.
+     */
+    public void put(String key, byte[] data) {
+        remove(key);
+        if (data.length > maxEntrySize || data.length > maxSize) {
+            return;
+        }
+        Iterator<byte[]> iterator = map.values().iterator();
+        while (size + data.length > maxSize && iterator.hasNext()) {
+            size -= iterator.next().length;
+            iterator.remove();
+        }
+        map.put(key, data);
+        size += data.length;
+    }
+
+    public void remove(String key) {
+        byte[] data = map.remove(key);
+        if (data != null) {
+            size -= data.length;
+        }
+    }
+
+    public void clear() {
+        map.clear();
+        size = 0;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+}
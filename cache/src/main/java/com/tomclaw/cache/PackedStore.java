@@ -0,0 +1,292 @@
+package com.tomclaw.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Log-structured storage of small entries. Entries are appended to large segment files,
+ * so they don't take a filesystem block and an inode each. Entry is named by its segment
+ * and offset, e.g. "segment-3@1024", and its length is the size of record.
+ * Segments, that are mostly dead, are compacted by moving their live entries
+ * to the active segment. Not thread-safe, must be guarded by journal lock.
+ */
+class PackedStore {
+
+    static final String SEGMENT_PREFIX = "segment-";
+    private static final char OFFSET_SEPARATOR = '@';
+
+    private final FileManager fileManager;
+    private final ChannelPool channels;
+    private final Logger logger;
+    private final long segmentSize;
+    private final float compactionRatio;
+    private final Map<String, Segment> segments = new HashMap<>();
+    private final List<String> compactionCandidates = new ArrayList<>();
+    private final Set<String> unsynced = new HashSet<>();
+    private int lastId = 0;
+    private String activeName;
+    private RandomAccessFile activeFile;
+
+    PackedStore(FileManager fileManager, ChannelPool channels, Logger logger,
+                long segmentSize, float compactionRatio) {
+        this.fileManager = fileManager;
+        this.channels = channels;
+        this.logger = logger;
+        this.segmentSize = segmentSize;
+        this.compactionRatio = compactionRatio;
+    }
+
+    static boolean isPacked(String name) {
+        return name.startsWith(SEGMENT_PREFIX);
+    }
+
+    static String segmentName(String name) {
+        return name.substring(0, name.lastIndexOf(OFFSET_SEPARATOR));
+    }
+
+    static long offset(String name) {
+        return Long.parseLong(name.substring(name.lastIndexOf(OFFSET_SEPARATOR) + 1));
+    }
+
+    /**
+     * Restores live sizes of segments from records and deletes segments without live entries.
+     * New entries are always appended to new segment, so tail of segment, that was written
+     * before crash, but is not referenced by journal, is never reused.
+     */
+    public void load(Collection<Record> records) {
+        segments.clear();
+        compactionCandidates.clear();
+        for (Record record : records) {
+            if (record.isPacked()) {
+                Segment segment = segment(segmentName(record.getName()));
+                segment.live += record.getSize();
+                segment.entries.put(record.getKey(), record.getName());
+            }
+        }
+        File dir = fileManager.journal().getParentFile();
+        String[] names = dir != null ? dir.list() : null;
+        if (names != null) {
+            for (String name : names) {
+                if (isPacked(name)) {
+                    segment(name);
+                }
+            }
+        }
+        for (Map.Entry<String, Segment> entry : new ArrayList<>(segments.entrySet())) {
+            Segment segment = entry.getValue();
+            segment.size = fileManager.get(entry.getKey()).length();
+            if (segment.live == 0) {
+                deleteSegment(entry.getKey());
+            } else if (isSparse(segment)) {
+                compactionCandidates.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Appends entry contents to the active segment.
+     *
+     * @param key key of entry, that is tracked as member of segment
+     * @return name of entry
+     */
+    public String append(String key, ByteBuffer data) throws IOException {
+        int length = data.remaining();
+        if (activeFile == null || segments.get(activeName).size + length > segmentSize) {
+            roll();
+        }
+        Segment segment = segments.get(activeName);
+        long offset = segment.size;
+        FileChannel channel = activeFile.getChannel();
+        while (data.hasRemaining()) {
+            channel.write(data, offset + length - data.remaining());
+        }
+        segment.size += length;
+        segment.live += length;
+        unsynced.add(activeName);
+        String name = activeName + OFFSET_SEPARATOR + offset;
+        segment.entries.put(key, name);
+        return name;
+    }
+
+    /**
+     * Reads entry contents.
+     */
+    public byte[] read(Record record) throws IOException {
+        byte[] data = new byte[(int) record.getSize()];
+        CachedChannel channel = open(record);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    throw new IOException(String.format("Entry %s is truncated", record.getName()));
+                }
+            }
+        } finally {
+            channel.close();
+        }
+        return data;
+    }
+
+    /**
+     * Opens handle of entry, that is bounded by entry range within segment.
+     */
+    public CachedChannel open(Record record) throws IOException {
+        String name = segmentName(record.getName());
+        ChannelPool.Entry entry = channels.acquire(name, fileManager.get(name));
+        return new CachedChannel(channels, entry, offset(record.getName()), record.getSize());
+    }
+
+    public boolean exists(Record record) {
+        String name = segmentName(record.getName());
+        Segment segment = segments.get(name);
+        return segment != null && offset(record.getName()) + record.getSize() <= segment.size
+                && fileManager.exists(name);
+    }
+
+    /**
+     * Marks entry as dead. Segment without live entries is deleted,
+     * and sparse segment becomes candidate for compaction.
+     */
+    public void release(Record record) {
+        String name = segmentName(record.getName());
+        Segment segment = segments.get(name);
+        if (segment == null) {
+            return;
+        }
+        // Key may be already put to the same segment again
+        if (record.getName().equals(segment.entries.get(record.getKey()))) {
+            segment.entries.remove(record.getKey());
+        }
+        segment.live -= record.getSize();
+        if (name.equals(activeName)) {
+            return;
+        }
+        if (segment.live <= 0) {
+            deleteSegment(name);
+        } else if (isSparse(segment) && !compactionCandidates.contains(name)) {
+            compactionCandidates.add(name);
+        }
+    }
+
+    /**
+     * Returns names of live entries of segment by their keys, so segment
+     * is compacted without scanning entries of other segments.
+     */
+    public Map<String, String> getEntries(String segment) {
+        Segment value = segments.get(segment);
+        return value != null ? new HashMap<>(value.entries) : Collections.<String, String>emptyMap();
+    }
+
+    /**
+     * Returns name of segment to compact or null if there is nothing to compact.
+     */
+    public String pollCompaction() {
+        while (!compactionCandidates.isEmpty()) {
+            String name = compactionCandidates.remove(0);
+            Segment segment = segments.get(name);
+            if (segment != null && isSparse(segment)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Flushes segments, appended since the last flush, to storage device.
+     */
+    public void sync() throws IOException {
+        for (String name : unsynced) {
+            if (name.equals(activeName)) {
+                activeFile.getChannel().force(true);
+            } else {
+                FileSync.force(fileManager.get(name));
+            }
+        }
+        unsynced.clear();
+    }
+
+    /**
+     * Closes the active segment. Next entry is appended to new segment.
+     */
+    public void close() {
+        closeActive();
+    }
+
+    public void deleteSegment(String name) {
+        segments.remove(name);
+        unsynced.remove(name);
+        compactionCandidates.remove(name);
+        channels.close(name);
+        try {
+            fileManager.delete(name);
+            logger.log("[x] Delete segment %s", name);
+        } catch (IOException ex) {
+            logger.log("[!] Unable to delete segment %s: %s", name, ex.getMessage());
+        }
+    }
+
+    private boolean isSparse(Segment segment) {
+        return segment.live < segment.size * compactionRatio;
+    }
+
+    private void roll() throws IOException {
+        closeActive();
+        activeName = SEGMENT_PREFIX + (++lastId);
+        File file = fileManager.get(activeName);
+        activeFile = new RandomAccessFile(file, "rw");
+        activeFile.setLength(0);
+        segment(activeName);
+        logger.log("[+] Start segment %s", activeName);
+    }
+
+    private void closeActive() {
+        if (activeFile != null) {
+            String name = activeName;
+            try {
+                activeFile.close();
+            } catch (IOException ignored) {
+            }
+            activeFile = null;
+            activeName = null;
+            Segment segment = segments.get(name);
+            if (segment != null && segment.live <= 0) {
+                deleteSegment(name);
+            } else if (segment != null && isSparse(segment)) {
+                compactionCandidates.add(name);
+            }
+        }
+    }
+
+    private Segment segment(String name) {
+        Segment segment = segments.get(name);
+        if (segment == null) {
+            segment = new Segment();
+            segments.put(name, segment);
+            try {
+                lastId = Math.max(lastId, Integer.parseInt(name.substring(SEGMENT_PREFIX.length())));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return segment;
+    }
+
+    private static class Segment {
+
+        long size;
+        long live;
+        final Map<String, String> entries = new HashMap<>();
+
+    }
+
+}
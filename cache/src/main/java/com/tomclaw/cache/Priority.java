@@ -0,0 +1,18 @@
+package com.tomclaw.cache;
+
+/**
+ * Eviction priority of cached file. Files of lower priority are evicted first,
+ * least recently used files are evicted first within the same priority.
+ */
+public enum Priority {
+
+    LOW,
+    NORMAL,
+    HIGH,
+    /**
+     * File is never evicted. Size of pinned files is limited separately
+     * with {@link DiskLruCache#setPinnedSizeLimit(long)}.
+     */
+    PINNED
+
+}
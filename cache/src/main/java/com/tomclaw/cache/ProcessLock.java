@@ -0,0 +1,133 @@
+package com.tomclaw.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Exclusive lock shared by all processes working with the same cache directory.
+ * Lock file also holds journal generation counter, so every holder may detect
+ * that journal was rewritten by another process since it was read last time.
+ * Lock file is opened only while lock is held, so cache doesn't keep descriptor open.
+ */
+class ProcessLock {
+
+    /**
+     * Local locks by canonical path of lock file. Lock is kept while any cache of
+     * the same directory references it, and cleared ones are purged on create.
+     */
+    private static final Map<String, WeakReference<ReentrantLock>> LOCAL_LOCKS = new HashMap<>();
+
+    private final File file;
+    private final ReentrantLock localLock;
+    private final ByteBuffer buffer = ByteBuffer.allocate(8);
+    private RandomAccessFile randomAccessFile;
+    private FileLock fileLock;
+
+    private ProcessLock(File file, ReentrantLock localLock) {
+        this.file = file;
+        this.localLock = localLock;
+    }
+
+    static ProcessLock create(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        ReentrantLock localLock;
+        synchronized (LOCAL_LOCKS) {
+            Iterator<WeakReference<ReentrantLock>> iterator = LOCAL_LOCKS.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().get() == null) {
+                    iterator.remove();
+                }
+            }
+            WeakReference<ReentrantLock> reference = LOCAL_LOCKS.get(path);
+            localLock = reference != null ? reference.get() : null;
+            if (localLock == null) {
+                localLock = new ReentrantLock();
+                LOCAL_LOCKS.put(path, new WeakReference<>(localLock));
+            }
+        }
+        return new ProcessLock(file, localLock);
+    }
+
+    /**
+     * Acquires lock and returns current journal generation.
+     */
+    long acquire() throws IOException {
+        // File locks are held on behalf of the whole JVM, so caches of the same
+        // process must be serialized before channel lock is requested
+        localLock.lock();
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            fileLock = randomAccessFile.getChannel().lock();
+            return readGeneration();
+        } catch (IOException ex) {
+            releaseFileLock();
+            localLock.unlock();
+            throw ex;
+        }
+    }
+
+    /**
+     * Releases lock, publishing specified journal generation first.
+     * Pass negative generation to leave stored one unchanged.
+     */
+    void release(long generation) {
+        try {
+            if (generation >= 0) {
+                writeGeneration(generation);
+            }
+        } catch (IOException ignored) {
+        } finally {
+            releaseFileLock();
+            localLock.unlock();
+        }
+    }
+
+    private long readGeneration() throws IOException {
+        FileChannel channel = randomAccessFile.getChannel();
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                return 0;
+            }
+        }
+        buffer.flip();
+        return buffer.getLong();
+    }
+
+    private void writeGeneration(long generation) throws IOException {
+        FileChannel channel = randomAccessFile.getChannel();
+        buffer.clear();
+        buffer.putLong(generation);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+
+    private void releaseFileLock() {
+        if (fileLock != null) {
+            try {
+                fileLock.release();
+            } catch (IOException ignored) {
+            }
+            fileLock = null;
+        }
+        if (randomAccessFile != null) {
+            try {
+                randomAccessFile.close();
+            } catch (IOException ignored) {
+            }
+            randomAccessFile = null;
+        }
+    }
+
+}
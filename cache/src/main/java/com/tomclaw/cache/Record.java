@@ -3,20 +3,104 @@ package com.tomclaw.cache;
 @SuppressWarnings("WeakerAccess")
 class Record {
 
+    /**
+     * Separates namespace from key in keys of namespaced records.
+     */
+    static final char NAMESPACE_SEPARATOR = '\u0000';
+
+    /**
+     * Separates key of entry from chunk offset in keys of chunk records.
+     */
+    static final char CHUNK_SEPARATOR = '\u0001';
+
+    /**
+     * Checksum of record, that was put without checksum.
+     */
+    static final long NO_CHECKSUM = -1;
+
+    /**
+     * Chunk offset of record, that holds whole entry.
+     */
+    static final long NO_CHUNK = -1;
+
     private final String key;
     private final String name;
     private final long time;
     private final long size;
+    private final int codec;
+    private final Priority priority;
+    private final long checksum;
+    private final long sequence;
+    private final long putSequence;
+    private final String namespace;
+
+    Record(Record record, long time, long sequence) {
+        this(record, time, sequence, record.putSequence);
+    }
 
-    Record(Record record, long time) {
-        this(record.key, record.name, time, record.size);
+    /**
+     * @param putSequence sequence of put, that stored contents of record
+     */
+    Record(Record record, long time, long sequence, long putSequence) {
+        this(record.key, record.name, time, record.size, record.codec, record.priority, record.checksum,
+                sequence, putSequence);
+    }
+
+    Record(Record record, String name) {
+        this(record.key, name, record.time, record.size, record.codec, record.priority, record.checksum,
+                record.sequence, record.putSequence);
+    }
+
+    Record(Record record, Priority priority) {
+        this(record.key, record.name, record.time, record.size, record.codec, priority, record.checksum,
+                record.sequence, record.putSequence);
     }
 
     Record(String key, String name, long time, long size) {
+        this(key, name, time, size, Codec.RAW);
+    }
+
+    Record(String key, String name, long time, long size, int codec) {
+        this(key, name, time, size, codec, Priority.NORMAL);
+    }
+
+    Record(String key, String name, long time, long size, int codec, Priority priority) {
+        this(key, name, time, size, codec, priority, NO_CHECKSUM);
+    }
+
+    Record(String key, String name, long time, long size, int codec, Priority priority, long checksum) {
+        this(key, name, time, size, codec, priority, checksum, 0);
+    }
+
+    /**
+     * @param sequence order of access among records with the same time, assigned by journal
+     */
+    Record(String key, String name, long time, long size, int codec, Priority priority, long checksum,
+           long sequence) {
+        this(key, name, time, size, codec, priority, checksum, sequence, sequence);
+    }
+
+    private Record(String key, String name, long time, long size, int codec, Priority priority, long checksum,
+                   long sequence, long putSequence) {
         this.key = key;
         this.name = name;
         this.time = time;
         this.size = size;
+        this.codec = codec;
+        this.priority = priority;
+        this.checksum = checksum;
+        this.sequence = sequence;
+        this.putSequence = putSequence;
+        int index = key.indexOf(NAMESPACE_SEPARATOR);
+        this.namespace = index == -1 ? "" : key.substring(0, index);
+    }
+
+    static String namespacedKey(String namespace, String key) {
+        return namespace.isEmpty() ? key : namespace + NAMESPACE_SEPARATOR + key;
+    }
+
+    static String chunkKey(String key, long offset) {
+        return key + CHUNK_SEPARATOR + offset;
     }
 
     public String getKey() {
@@ -27,6 +111,51 @@ class Record {
         return name;
     }
 
+    /**
+     * Returns namespace of record or empty string for default namespace.
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Returns key without namespace.
+     */
+    public String getLocalKey() {
+        return namespace.isEmpty() ? key : key.substring(namespace.length() + 1);
+    }
+
+    /**
+     * Returns key of entry without namespace and chunk offset.
+     */
+    public String getEntryKey() {
+        String localKey = getLocalKey();
+        int index = localKey.indexOf(CHUNK_SEPARATOR);
+        return index == -1 ? localKey : localKey.substring(0, index);
+    }
+
+    /**
+     * Returns offset of chunk within entry or {@link #NO_CHUNK} if record holds whole entry.
+     */
+    public long getChunkOffset() {
+        int index = key.indexOf(CHUNK_SEPARATOR);
+        return index == -1 ? NO_CHUNK : Long.parseLong(key.substring(index + 1));
+    }
+
+    /**
+     * Checks whether contents are stored in segment of packed storage.
+     */
+    public boolean isPacked() {
+        return PackedStore.isPacked(name);
+    }
+
+    /**
+     * Checks whether record holds chunk of large entry.
+     */
+    public boolean isChunk() {
+        return key.indexOf(CHUNK_SEPARATOR) != -1;
+    }
+
     public long getTime() {
         return time;
     }
@@ -35,6 +164,40 @@ class Record {
         return size;
     }
 
+    /**
+     * Returns identifier of codec, contents are encoded with.
+     */
+    public int getCodec() {
+        return codec;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns CRC32 of stored contents or {@link #NO_CHECKSUM}.
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns sequence of put, that stored contents of record. Unlike sequence,
+     * it is not changed on access, so it tells whether record was put again.
+     */
+    public long getPutSequence() {
+        return putSequence;
+    }
+
+    public boolean isPinned() {
+        return priority == Priority.PINNED;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -44,6 +207,9 @@ class Record {
 
         if (time != record.time) return false;
         if (size != record.size) return false;
+        if (codec != record.codec) return false;
+        if (priority != record.priority) return false;
+        if (checksum != record.checksum) return false;
         if (!key.equals(record.key)) return false;
         return name.equals(record.name);
     }
@@ -54,6 +220,9 @@ class Record {
         result = 31 * result + name.hashCode();
         result = 31 * result + (int) (time ^ (time >>> 32));
         result = 31 * result + (int) (size ^ (size >>> 32));
+        result = 31 * result + codec;
+        result = 31 * result + priority.hashCode();
+        result = 31 * result + (int) (checksum ^ (checksum >>> 32));
         return result;
     }
 }
@@ -2,11 +2,16 @@ package com.tomclaw.cache;
 
 import java.util.Comparator;
 
+/**
+ * Orders records from the most recently used to the least recently used one.
+ * Records with the same time are ordered by sequence of access.
+ */
 class RecordComparator implements Comparator<Record> {
 
     @Override
     public int compare(Record record1, Record record2) {
-        return compare(record2.getTime(), record1.getTime());
+        int result = compare(record2.getTime(), record1.getTime());
+        return result != 0 ? result : compare(record2.getSequence(), record1.getSequence());
     }
 
     @SuppressWarnings("UseCompareMethod")
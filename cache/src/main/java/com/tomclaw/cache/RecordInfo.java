@@ -8,24 +8,48 @@ package com.tomclaw.cache;
 public class RecordInfo {
 
     private final String key;
+    private final String namespace;
+    private final long chunkOffset;
     private final String fileName;
     private final long size;
     private final long lastAccessed;
+    private final Priority priority;
+    final long sequence;
 
-    RecordInfo(String key, String fileName, long size, long lastAccessed) {
+    RecordInfo(String key, String namespace, long chunkOffset, String fileName, long size, long lastAccessed,
+               Priority priority, long sequence) {
         this.key = key;
+        this.namespace = namespace;
+        this.chunkOffset = chunkOffset;
         this.fileName = fileName;
         this.size = size;
         this.lastAccessed = lastAccessed;
+        this.priority = priority;
+        this.sequence = sequence;
     }
 
     /**
-     * Returns the key used to store this record.
+     * Returns the key used to store this record within its namespace.
+     * For chunk of large entry returns the key of entry.
      */
     public String getKey() {
         return key;
     }
 
+    /**
+     * Returns the namespace of record or empty string for default namespace.
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Returns offset of chunk within entry or -1, if record holds whole entry.
+     */
+    public long getChunkOffset() {
+        return chunkOffset;
+    }
+
     /**
      * Returns the actual file name in cache directory.
      */
@@ -48,13 +72,23 @@ public class RecordInfo {
         return lastAccessed;
     }
 
+    /**
+     * Returns the eviction priority of record.
+     */
+    public Priority getPriority() {
+        return priority;
+    }
+
     @Override
     public String toString() {
         return "RecordInfo{" +
                 "key='" + key + '\'' +
+                ", namespace='" + namespace + '\'' +
+                ", chunkOffset=" + chunkOffset +
                 ", fileName='" + fileName + '\'' +
                 ", size=" + size +
                 ", lastAccessed=" + lastAccessed +
+                ", priority=" + priority +
                 '}';
     }
 }
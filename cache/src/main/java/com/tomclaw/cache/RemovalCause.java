@@ -0,0 +1,29 @@
+package com.tomclaw.cache;
+
+/**
+ * Reason of file removal from cache.
+ */
+public enum RemovalCause {
+
+    /**
+     * File is evicted to fit cache size or entries limit.
+     */
+    EVICTED_SIZE,
+    /**
+     * File is replaced by another one with the same key.
+     */
+    REPLACED,
+    /**
+     * File is deleted by user.
+     */
+    EXPLICIT,
+    /**
+     * File is found missing in cache directory.
+     */
+    MISSING_FILE,
+    /**
+     * File contents don't match size or checksum of record.
+     */
+    CORRUPTED
+
+}
@@ -0,0 +1,17 @@
+package com.tomclaw.cache;
+
+import java.util.List;
+
+/**
+ * Receives notifications about files removed from cache.
+ * Notifications are delivered in batches on executor, passed with listener,
+ * so listener doesn't block cache operations.
+ */
+public interface RemovalListener {
+
+    /**
+     * @param notifications removed files in order of removal
+     */
+    void onRemoval(List<RemovalNotification> notifications);
+
+}
@@ -0,0 +1,66 @@
+package com.tomclaw.cache;
+
+/**
+ * Information about file removed from cache.
+ */
+@SuppressWarnings("unused")
+public class RemovalNotification {
+
+    private final String key;
+    private final String namespace;
+    private final long chunkOffset;
+    private final long size;
+    private final RemovalCause cause;
+
+    RemovalNotification(String key, String namespace, long chunkOffset, long size, RemovalCause cause) {
+        this.key = key;
+        this.namespace = namespace;
+        this.chunkOffset = chunkOffset;
+        this.size = size;
+        this.cause = cause;
+    }
+
+    /**
+     * Returns the key of removed file within its namespace.
+     * For chunk of large entry returns the key of entry.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the namespace of removed file or empty string for default namespace.
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Returns offset of removed chunk within entry or -1, if whole entry is removed.
+     */
+    public long getChunkOffset() {
+        return chunkOffset;
+    }
+
+    /**
+     * Returns the file size in bytes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public RemovalCause getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        return "RemovalNotification{" +
+                "key='" + key + '\'' +
+                ", namespace='" + namespace + '\'' +
+                ", chunkOffset=" + chunkOffset +
+                ", size=" + size +
+                ", cause=" + cause +
+                '}';
+    }
+}
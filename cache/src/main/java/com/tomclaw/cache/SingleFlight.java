@@ -0,0 +1,77 @@
+package com.tomclaw.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Coalesces concurrent calls with the same key, so only one of them is executed
+ * and the others wait for its result.
+ */
+class SingleFlight {
+
+    private final Map<String, Call> calls = new HashMap<>();
+
+    interface Task {
+
+        File run() throws IOException;
+
+    }
+
+    File execute(String key, Task task) throws IOException {
+        Call call;
+        boolean leader = false;
+        synchronized (calls) {
+            call = calls.get(key);
+            if (call == null) {
+                call = new Call();
+                calls.put(key, call);
+                leader = true;
+            }
+        }
+        if (leader) {
+            try {
+                File result = task.run();
+                call.result = result;
+                return result;
+            } catch (IOException | RuntimeException ex) {
+                call.error = ex;
+                throw ex;
+            } finally {
+                synchronized (calls) {
+                    calls.remove(key);
+                }
+                call.latch.countDown();
+            }
+        }
+        return call.await();
+    }
+
+    private static class Call {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile File result;
+        private volatile Exception error;
+
+        File await() throws IOException {
+            try {
+                latch.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for loading");
+            }
+            Exception error = this.error;
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error != null) {
+                throw new IOException(error.getMessage(), error);
+            }
+            return result;
+        }
+
+    }
+
+}
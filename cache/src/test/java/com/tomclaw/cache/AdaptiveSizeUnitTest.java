@@ -0,0 +1,57 @@
+package com.tomclaw.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveSizeUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sample_plentyOfSpace_limitIsMaxSize() {
+        AdaptiveSize size = new AdaptiveSize(folder.getRoot(), 100, 1000, 0, 0);
+
+        size.sample(0);
+
+        assertEquals(1000, size.getLimit());
+    }
+
+    @Test
+    public void sample_reserveExceedsUsableSpace_limitIsMinSize() {
+        AdaptiveSize size = new AdaptiveSize(folder.getRoot(), 100, 1000, Long.MAX_VALUE / 2, 0);
+
+        boolean changed = size.sample(0);
+
+        assertTrue(changed);
+        assertEquals(100, size.getLimit());
+    }
+
+    @Test
+    public void sample_reserveLeavesPartOfUsableSpace_limitFollowsUsableSpace() {
+        long usableSpace = folder.getRoot().getUsableSpace();
+        long reserve = usableSpace - 500;
+        AdaptiveSize size = new AdaptiveSize(folder.getRoot(), 100, Long.MAX_VALUE, reserve, 0);
+
+        size.sample(200);
+
+        // Usable space may slightly change between samples
+        assertTrue(Math.abs(size.getLimit() - 700) < 64 * 1024);
+    }
+
+    @Test
+    public void sample_intervalNotPassed_notSampled() {
+        AdaptiveSize size = new AdaptiveSize(folder.getRoot(), 100, 1000, 0, 60000);
+        size.sample(0);
+
+        boolean changed = size.sample(0);
+
+        assertFalse(changed);
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.tomclaw.cache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.tomclaw.cache.Helpers.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncDiskLruCacheUnitTest {
+
+    private static final long CACHE_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AsyncDiskLruCache asyncCache;
+
+    @Before
+    public void setUp() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(folder.newFolder("cache"), CACHE_SIZE);
+        asyncCache = new AsyncDiskLruCache(cache);
+    }
+
+    @Test
+    public void putAsync_getAsync_fileReturned() throws Exception {
+        asyncCache.putAsync("key", createTempFile(100)).get();
+
+        File result = asyncCache.getAsync("key").get();
+
+        assertNotNull(result);
+        assertEquals(100, result.length());
+    }
+
+    @Test
+    public void deleteAsync_fileRemoved() throws Exception {
+        asyncCache.putAsync("key", createTempFile(100)).get();
+
+        asyncCache.deleteAsync("key").get();
+
+        assertNull(asyncCache.getAsync("key").get());
+    }
+
+    @Test
+    public void deleteAsync_nonExistingKey_failureDelivered() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        asyncCache.deleteAsync("key", new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                error.set(throwable);
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(error.get() instanceof RecordNotFoundException);
+    }
+
+    @Test
+    public void submit_tooManyPending_rejected() throws Exception {
+        final List<Runnable> queue = new ArrayList<>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queue.add(command);
+            }
+        };
+        AsyncDiskLruCache cache = new AsyncDiskLruCache(asyncCache.getCache(), executor, 2);
+        cache.getAsync("key1");
+        cache.getAsync("key2");
+
+        Future<File> rejected = cache.getAsync("key3");
+
+        try {
+            rejected.get();
+            fail("Expected operation to be rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(0, cache.getAvailablePermits());
+        queue.get(0).run();
+        assertEquals(1, cache.getAvailablePermits());
+    }
+
+    @Test
+    public void submit_cancelled_permitHeldUntilRun() throws Exception {
+        final List<Runnable> queue = new ArrayList<>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queue.add(command);
+            }
+        };
+        AsyncDiskLruCache cache = new AsyncDiskLruCache(asyncCache.getCache(), executor, 1);
+        Future<File> future = cache.getAsync("key1");
+
+        future.cancel(true);
+
+        assertEquals(0, cache.getAvailablePermits());
+        queue.get(0).run();
+        assertEquals(1, cache.getAvailablePermits());
+    }
+
+    private File createTempFile(int size) throws IOException {
+        File file = folder.newFile(randomString(8) + ".dat");
+        try (DataOutputStream stream = new DataOutputStream(new FileOutputStream(file))) {
+            for (int c = 0; c < size; c++) {
+                stream.writeByte(c % 256);
+            }
+        }
+        return file;
+    }
+
+}
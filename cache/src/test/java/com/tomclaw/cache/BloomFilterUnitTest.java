@@ -0,0 +1,52 @@
+package com.tomclaw.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterUnitTest {
+
+    @Test
+    public void mightContain_addedKeys_alwaysTrue() {
+        BloomFilter filter = new BloomFilter(1000);
+        for (int c = 0; c < 1000; c++) {
+            filter.add("key" + c);
+        }
+
+        for (int c = 0; c < 1000; c++) {
+            assertTrue(filter.mightContain("key" + c));
+        }
+    }
+
+    @Test
+    public void mightContain_absentKeys_rarelyTrue() {
+        BloomFilter filter = new BloomFilter(1000);
+        for (int c = 0; c < 1000; c++) {
+            filter.add("key" + c);
+        }
+
+        int falsePositives = 0;
+        for (int c = 0; c < 10000; c++) {
+            if (filter.mightContain("absent" + c)) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < 300);
+    }
+
+    @Test
+    public void isSaturated_moreKeysThanCapacity_true() {
+        BloomFilter filter = new BloomFilter(100);
+        for (int c = 0; c < 100; c++) {
+            filter.add("key" + c);
+        }
+        assertFalse(filter.isSaturated());
+
+        filter.add("key100");
+
+        assertTrue(filter.isSaturated());
+    }
+
+}
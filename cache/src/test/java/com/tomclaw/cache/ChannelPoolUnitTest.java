@@ -0,0 +1,80 @@
+package com.tomclaw.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelPoolUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void acquire_sameName_channelReused() throws IOException {
+        ChannelPool pool = new ChannelPool(2);
+        File file = folder.newFile("file1");
+
+        ChannelPool.Entry entry1 = pool.acquire("file1", file);
+        pool.release(entry1);
+        ChannelPool.Entry entry2 = pool.acquire("file1", file);
+
+        assertSame(entry1, entry2);
+        assertEquals(1, pool.getOpenCount());
+    }
+
+    @Test
+    public void acquire_poolFull_leastRecentlyUsedIdleChannelClosed() throws IOException {
+        ChannelPool pool = new ChannelPool(2);
+        ChannelPool.Entry entry1 = pool.acquire("file1", folder.newFile("file1"));
+        pool.release(entry1);
+        ChannelPool.Entry entry2 = pool.acquire("file2", folder.newFile("file2"));
+        pool.release(entry2);
+
+        pool.acquire("file3", folder.newFile("file3"));
+
+        assertFalse(entry1.channel.isOpen());
+        assertTrue(entry2.channel.isOpen());
+        assertEquals(2, pool.getOpenCount());
+    }
+
+    @Test
+    public void close_channelInUse_closedOnRelease() throws IOException {
+        ChannelPool pool = new ChannelPool(2);
+        ChannelPool.Entry entry = pool.acquire("file1", folder.newFile("file1"));
+
+        pool.close("file1");
+
+        assertTrue(entry.channel.isOpen());
+        pool.release(entry);
+        assertFalse(entry.channel.isOpen());
+        assertEquals(0, pool.getOpenCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void acquire_allChannelsInUse_throwsException() throws IOException {
+        ChannelPool pool = new ChannelPool(1);
+        pool.acquire("file1", folder.newFile("file1"));
+
+        pool.acquire("file2", folder.newFile("file2"));
+    }
+
+    @Test
+    public void setMaxSize_idleChannelsOverLimitClosed() throws IOException {
+        ChannelPool pool = new ChannelPool(2);
+        pool.release(pool.acquire("file1", folder.newFile("file1")));
+        pool.release(pool.acquire("file2", folder.newFile("file2")));
+
+        pool.setMaxSize(1);
+
+        assertEquals(1, pool.getOpenCount());
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.tomclaw.cache;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static com.tomclaw.cache.Helpers.randomString;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CodecUnitTest {
+
+    private final Random random = new Random(System.currentTimeMillis());
+
+    @Test
+    public void lzf_compressibleData_restoredAndCompressed() throws IOException {
+        byte[] data = compressibleData(200000);
+
+        byte[] encoded = encode(new LzfCodec(), data);
+
+        assertTrue(encoded.length < data.length / 2);
+        assertArrayEquals(data, decode(new LzfCodec(), encoded));
+    }
+
+    @Test
+    public void lzf_randomData_restored() throws IOException {
+        byte[] data = new byte[100000];
+        random.nextBytes(data);
+
+        byte[] encoded = encode(new LzfCodec(), data);
+
+        assertArrayEquals(data, decode(new LzfCodec(), encoded));
+    }
+
+    @Test
+    public void lzf_emptyData_restored() throws IOException {
+        byte[] data = new byte[0];
+
+        byte[] encoded = encode(new LzfCodec(), data);
+
+        assertArrayEquals(data, decode(new LzfCodec(), encoded));
+    }
+
+    @Test
+    public void lzf_repeatedByte_restored() throws IOException {
+        byte[] data = new byte[LzfCodec.BLOCK_SIZE + 1000];
+
+        byte[] encoded = encode(new LzfCodec(), data);
+
+        assertTrue(encoded.length < data.length / 10);
+        assertArrayEquals(data, decode(new LzfCodec(), encoded));
+    }
+
+    @Test
+    public void deflate_compressibleData_restoredAndCompressed() throws IOException {
+        byte[] data = compressibleData(200000);
+
+        byte[] encoded = encode(new DeflateCodec(), data);
+
+        assertTrue(encoded.length < data.length / 2);
+        assertArrayEquals(data, decode(new DeflateCodec(), encoded));
+    }
+
+    private byte[] compressibleData(int size) {
+        String[] words = new String[32];
+        for (int c = 0; c < words.length; c++) {
+            words[c] = randomString(2 + random.nextInt(8));
+        }
+        StringBuilder builder = new StringBuilder(size);
+        while (builder.length() < size) {
+            builder.append("{\"key\":\"").append(words[random.nextInt(words.length)]).append("\"},");
+        }
+        return builder.substring(0, size).getBytes(DiskLruCache.UTF_8);
+    }
+
+    private static byte[] encode(Codec codec, byte[] data) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (OutputStream stream = codec.encode(output)) {
+            stream.write(data);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] decode(Codec codec, byte[] data) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream stream = codec.decode(new ByteArrayInputStream(data))) {
+            byte[] buffer = new byte[1000];
+            int length;
+            while ((length = stream.read(buffer)) > 0) {
+                output.write(buffer, 0, length);
+            }
+        }
+        return output.toByteArray();
+    }
+
+}
@@ -5,11 +5,30 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.tomclaw.cache.Helpers.randomString;
 import static org.junit.Assert.assertEquals;
@@ -18,6 +37,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 public class DiskLruCacheUnitTest {
 
@@ -186,6 +206,254 @@ public class DiskLruCacheUnitTest {
         assertNotNull(cache.get("key3"));
     }
 
+    // ==================== Batch operations tests ====================
+
+    @Test
+    public void putAll_filesAddedToCache() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        Map<String, File> files = new HashMap<>();
+        files.put("key1", createTempFile(100, ".txt"));
+        files.put("key2", createTempFile(150, ".txt"));
+
+        Map<String, File> result = cache.putAll(files);
+
+        assertEquals(2, result.size());
+        assertTrue(result.get("key1").exists());
+        assertEquals(150, result.get("key2").length());
+        assertEquals(250, cache.getUsedSpace());
+    }
+
+    @Test
+    public void putAll_combinedSizeOverLimit_oldFilesEvicted() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 300);
+        File oldFile = cache.put("old", createTempFile(200, ".txt"));
+        Map<String, File> files = new HashMap<>();
+        files.put("key1", createTempFile(100, ".txt"));
+        files.put("key2", createTempFile(100, ".txt"));
+
+        cache.putAll(files);
+
+        assertFalse(oldFile.exists());
+        assertEquals(200, cache.getUsedSpace());
+        assertEquals(2, cache.keySet().size());
+    }
+
+    @Test
+    public void putAll_combinedSizeExceedsCache_throwsException() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 150);
+        Map<String, File> files = new HashMap<>();
+        files.put("key1", createTempFile(100, ".txt"));
+        files.put("key2", createTempFile(100, ".txt"));
+
+        try {
+            cache.putAll(files);
+            fail("Expected IOException for files larger than cache");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("exceeds cache size"));
+        }
+        assertEquals(0, cache.getUsedSpace());
+        assertTrue(cache.keySet().isEmpty());
+    }
+
+    @Test
+    public void putAll_exceedsCache_existingFilesAndSourcesKept() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 1000);
+        File oldFile = cache.put("key1", createTempFile(100, ".txt"));
+        File file1 = createTempFile(600, ".txt");
+        File file2 = createTempFile(600, ".txt");
+        Map<String, File> files = new HashMap<>();
+        files.put("key1", file1);
+        files.put("key2", file2);
+
+        try {
+            cache.putAll(files);
+            fail("Expected IOException for files larger than cache");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("exceeds cache size"));
+        }
+
+        assertTrue(oldFile.exists());
+        assertEquals(oldFile, cache.get("key1"));
+        assertEquals(100, cache.getUsedSpace());
+        assertTrue(file1.exists());
+        assertTrue(file2.exists());
+    }
+
+    @Test
+    public void getAll_existingKeysReturned() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.put("key1", createTempFile(100, ".txt"));
+        cache.put("key2", createTempFile(100, ".txt"));
+
+        Map<String, File> result = cache.getAll(Arrays.asList("key1", "key2", "key3"));
+
+        assertEquals(2, result.size());
+        assertNotNull(result.get("key1"));
+        assertNotNull(result.get("key2"));
+    }
+
+    @Test
+    public void deleteAll_existingKeysDeleted() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        File cachedFile1 = cache.put("key1", createTempFile(100, ".txt"));
+        cache.put("key2", createTempFile(100, ".txt"));
+
+        int count = cache.deleteAll(Arrays.asList("key1", "key3"));
+
+        assertEquals(1, count);
+        assertFalse(cachedFile1.exists());
+        assertEquals(100, cache.getUsedSpace());
+    }
+
+    // ==================== Background eviction tests ====================
+
+    @Test
+    public void backgroundEviction_highWatermarkExceeded_trimmedToLowWatermark() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 1000);
+        QueueExecutor executor = new QueueExecutor();
+        cache.setBackgroundEviction(executor, 0.8f, 0.5f);
+        cache.put("key1", createTempFile(300, ".txt"));
+        cache.put("key2", createTempFile(300, ".txt"));
+
+        cache.put("key3", createTempFile(300, ".txt"));
+
+        assertEquals(900, cache.getUsedSpace());
+        assertEquals(1, executor.tasks.size());
+
+        executor.runAll();
+
+        assertEquals(300, cache.getUsedSpace());
+        assertEquals(1, cache.keySet().size());
+    }
+
+    @Test
+    public void backgroundEviction_belowHighWatermark_notScheduled() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 1000);
+        QueueExecutor executor = new QueueExecutor();
+        cache.setBackgroundEviction(executor, 0.8f, 0.5f);
+
+        cache.put("key1", createTempFile(300, ".txt"));
+        cache.put("key2", createTempFile(300, ".txt"));
+
+        assertTrue(executor.tasks.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void backgroundEviction_invalidWatermarks_throwsException() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 1000);
+
+        cache.setBackgroundEviction(new QueueExecutor(), 0.5f, 0.8f);
+    }
+
+    // ==================== Resize tests ====================
+
+    @Test
+    public void setMaxSize_smallerSize_filesEvicted() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.put("key1", createTempFile(300, ".txt"));
+        cache.put("key2", createTempFile(300, ".txt"));
+        cache.put("key3", createTempFile(300, ".txt"));
+
+        cache.setMaxSize(500);
+
+        assertEquals(500, cache.getCacheSize());
+        assertEquals(300, cache.getUsedSpace());
+        assertEquals(200, cache.getFreeSpace());
+    }
+
+    @Test
+    public void setMaxSize_largerSize_filesKept() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 500);
+        cache.put("key1", createTempFile(300, ".txt"));
+
+        cache.setMaxSize(1000);
+        cache.put("key2", createTempFile(300, ".txt"));
+        cache.put("key3", createTempFile(300, ".txt"));
+
+        assertEquals(900, cache.getUsedSpace());
+    }
+
+    @Test
+    public void trimToSize_manyFiles_trimmedInBatches() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 100000);
+        int count = DiskLruCache.EVICTION_BATCH_SIZE * 2 + 10;
+        for (int c = 0; c < count; c++) {
+            cache.put("key" + c, createTempFile(10, ".txt"));
+        }
+
+        cache.trimToSize(100);
+
+        assertEquals(100, cache.getUsedSpace());
+        assertEquals(10, cache.keySet().size());
+        assertEquals(100000, cache.getCacheSize());
+    }
+
+    @Test
+    public void setMaxEntries_countExceeded_filesEvicted() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.put("key1", createTempFile(10, ".txt"));
+        cache.put("key2", createTempFile(10, ".txt"));
+        cache.put("key3", createTempFile(10, ".txt"));
+
+        cache.setMaxEntries(2);
+
+        assertEquals(2, cache.keySet().size());
+        assertEquals(20, cache.getUsedSpace());
+    }
+
+    @Test
+    public void setMaxEntries_putOverLimit_oldestFileEvicted() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setMaxEntries(2);
+        cache.put("key1", createTempFile(10, ".txt"));
+        cache.put("key2", createTempFile(10, ".txt"));
+
+        cache.put("key3", createTempFile(10, ".txt"));
+
+        assertEquals(2, cache.keySet().size());
+        assertTrue(cache.keySet().contains("key3"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMaxSize_zeroSize_throwsException() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        cache.setMaxSize(0);
+    }
+
+    // ==================== Adaptive size tests ====================
+
+    @Test
+    public void adaptiveSize_lowOnSpace_cacheSizeShrinksToMinSize() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        cache.setAdaptiveSize(300, 2000, Long.MAX_VALUE / 2);
+
+        assertEquals(300, cache.getCacheSize());
+    }
+
+    @Test
+    public void adaptiveSize_plentyOfSpace_cacheSizeGrowsToMaxSize() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        cache.setAdaptiveSize(300, 2000, 0);
+
+        assertEquals(2000, cache.getCacheSize());
+    }
+
+    @Test
+    public void adaptiveSize_cacheSizeShrinks_filesEvicted() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.put("key1", createTempFile(300, ".txt"));
+        cache.put("key2", createTempFile(300, ".txt"));
+        cache.setAdaptiveSize(400, 2000, Long.MAX_VALUE / 2);
+
+        cache.put("key3", createTempFile(100, ".txt"));
+
+        assertTrue(cache.getUsedSpace() <= 400);
+        assertNotNull(cache.get("key3"));
+    }
+
     // ==================== get() tests ====================
 
     @Test
@@ -235,6 +503,108 @@ public class DiskLruCacheUnitTest {
         cache.get(null);
     }
 
+    // ==================== get() with loader tests ====================
+
+    @Test
+    public void getWithLoader_missingKey_fileLoaded() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        File result = cache.get("key", new Loader() {
+            @Override
+            public File load(String key) throws IOException {
+                return createTempFile(100, ".txt");
+            }
+        });
+
+        assertNotNull(result);
+        assertEquals(100, result.length());
+        assertNotNull(cache.get("key"));
+    }
+
+    @Test
+    public void getWithLoader_concurrentCalls_loadedOnce() throws Exception {
+        final DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Loader loader = new Loader() {
+            @Override
+            public File load(String key) throws IOException {
+                loads.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+                return createTempFile(100, ".txt");
+            }
+        };
+        List<Thread> threads = new ArrayList<>();
+        final List<File> results = Collections.synchronizedList(new ArrayList<File>());
+        for (int c = 0; c < 8; c++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        results.add(cache.get("key", loader));
+                    } catch (IOException ignored) {
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        started.await();
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(8, results.size());
+        for (File result : results) {
+            assertNotNull(result);
+        }
+    }
+
+    @Test
+    public void getWithLoader_loaderFails_exceptionPropagated() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        try {
+            cache.get("key", new Loader() {
+                @Override
+                public File load(String key) throws IOException {
+                    throw new IOException("Origin is not available");
+                }
+            });
+            fail("Expected IOException from loader");
+        } catch (IOException e) {
+            assertEquals("Origin is not available", e.getMessage());
+        }
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void getWithLoader_negativeCacheTimeSet_missRemembered() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setNegativeCacheTime(60000);
+        final AtomicInteger loads = new AtomicInteger();
+        Loader loader = new Loader() {
+            @Override
+            public File load(String key) {
+                loads.incrementAndGet();
+                return null;
+            }
+        };
+
+        assertNull(cache.get("key", loader));
+        assertNull(cache.get("key", loader));
+
+        assertEquals(1, loads.get());
+    }
+
     // ==================== delete() tests ====================
 
     @Test
@@ -320,6 +690,47 @@ public class DiskLruCacheUnitTest {
         assertTrue(journalSize > 0);
     }
 
+    @Test
+    public void summary_reflectsOperations() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        assertEquals(0, cache.summary().getEntryCount());
+        assertEquals(0, cache.summary().getOldestAccessTime());
+
+        cache.put("key1", createTempFile(100, ".txt"));
+        Thread.sleep(2);
+        cache.put("key2", createTempFile(200, ".txt"));
+        long oldest = cache.getRecordInfo("key1").getLastAccessed();
+        CacheSummary summary = cache.summary();
+
+        assertEquals(2, summary.getEntryCount());
+        assertEquals(300, summary.getUsedSpace());
+        assertEquals(CACHE_SIZE - 300, summary.getFreeSpace());
+        assertEquals(cache.getJournalSize(), summary.getJournalSize());
+        assertEquals(new File(cacheDir, "journal.bin").length(), summary.getJournalSize());
+        assertEquals(oldest, summary.getOldestAccessTime());
+
+        cache.delete("key1");
+        cache.setMaxSize(500);
+
+        summary = cache.summary();
+        assertEquals(1, summary.getEntryCount());
+        assertEquals(200, summary.getUsedSpace());
+        assertEquals(300, summary.getFreeSpace());
+        assertEquals(cache.getRecordInfo("key2").getLastAccessed(), summary.getOldestAccessTime());
+    }
+
+    @Test
+    public void summary_restoredOnCreate() throws Exception {
+        DiskLruCache cache1 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache1.put("key1", createTempFile(100, ".txt"));
+
+        DiskLruCache cache2 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        assertEquals(1, cache2.summary().getEntryCount());
+        assertEquals(100, cache2.summary().getUsedSpace());
+        assertEquals(cache1.summary().getJournalSize(), cache2.summary().getJournalSize());
+    }
+
     // ==================== Persistence tests ====================
 
     @Test
@@ -338,7 +749,1306 @@ public class DiskLruCacheUnitTest {
         assertEquals(250, cache2.getUsedSpace());
     }
 
-    // ==================== Helper methods ====================
+    // ==================== putBytes() tests ====================
+
+    @Test
+    public void putBytes_contentsStored() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5});
+
+        File cachedFile = cache.putBytes("key", data);
+
+        assertTrue(cachedFile.exists());
+        assertEquals(5, cachedFile.length());
+        assertEquals(5, cache.getUsedSpace());
+        assertEquals(0, data.position());
+    }
+
+    @Test
+    public void putBytes_contentsReadBack() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.putBytes("key", ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5}));
+
+        ByteBuffer result = cache.getBytes("key");
+
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5}), result);
+    }
+
+    @Test
+    public void putBytes_replacesFileEntry() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        File oldFile = cache.put("key", createTempFile(100, ".txt"));
+
+        cache.putBytes("key", ByteBuffer.wrap(new byte[10]));
+
+        assertFalse(oldFile.exists());
+        assertEquals(10, cache.getUsedSpace());
+        assertEquals(1, cache.keySet().size());
+    }
+
+    @Test
+    public void putBytes_dataLargerThanCache_throwsException() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 100);
+
+        try {
+            cache.putBytes("key", ByteBuffer.wrap(new byte[200]));
+            fail("Expected IOException for data larger than cache");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("exceeds cache size"));
+        }
+        String[] files = cacheDir.list();
+        assertNotNull(files);
+        assertEquals(0, files.length);
+    }
+
+    @Test
+    public void putBytes_codecSet_compressedContentsAccounted() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setCodec(new LzfCodec());
+        byte[] data = new byte[800];
+
+        cache.putBytes("key", ByteBuffer.wrap(data));
+
+        assertTrue(cache.getUsedSpace() < 100);
+        assertEquals(ByteBuffer.wrap(data), cache.getBytes("key"));
+    }
+
+    @Test
+    public void putBytes_incompressibleContents_storedRaw() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setCodec(new DeflateCodec());
+        byte[] data = new byte[500];
+        new Random().nextBytes(data);
+
+        File cachedFile = cache.putBytes("key", ByteBuffer.wrap(data));
+
+        assertEquals(500, cache.getUsedSpace());
+        assertEquals(500, cachedFile.length());
+        assertEquals(ByteBuffer.wrap(data), cache.getBytes("key"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void get_encodedContents_throwsException() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setCodec(new DeflateCodec());
+        cache.putBytes("key", ByteBuffer.wrap(new byte[800]));
+
+        cache.get("key");
+    }
+
+    @Test
+    public void openStream_encodedContents_decoded() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setCodec(new DeflateCodec());
+        byte[] data = new byte[800];
+        cache.putBytes("key", ByteBuffer.wrap(data));
+
+        byte[] result = new byte[1000];
+        int length = 0;
+        try (InputStream stream = cache.openStream("key")) {
+            int count;
+            while ((count = stream.read(result, length, result.length - length)) > 0) {
+                length += count;
+            }
+        }
+
+        assertEquals(800, length);
+    }
+
+    @Test
+    public void persistence_codecRestoredAfterReopen() throws IOException {
+        DiskLruCache cache1 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache1.setCodec(new LzfCodec());
+        cache1.putBytes("key", ByteBuffer.wrap(new byte[800]));
+
+        DiskLruCache cache2 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        assertEquals(ByteBuffer.wrap(new byte[800]), cache2.getBytes("key"));
+    }
+
+    // ==================== getBytes() tests ====================
+
+    @Test
+    public void getBytes_existingKey_returnsContents() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.put("key", createTempFile(100, ".txt"));
+
+        ByteBuffer result = cache.getBytes("key");
+
+        assertNotNull(result);
+        assertEquals(100, result.remaining());
+        assertEquals(99, result.get(99));
+    }
+
+    @Test
+    public void getBytes_nonExistingKey_returnsNull() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        assertNull(cache.getBytes("non-existing-key"));
+    }
+
+    @Test
+    public void getBytes_memoryCacheEnabled_servedWithoutFile() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setMemoryCacheSize(512, 128);
+        File cachedFile = cache.put("key", createTempFile(100, ".txt"));
+        cache.getBytes("key");
+
+        // Modify file behind the cache back to detect memory hit
+        try (FileOutputStream stream = new FileOutputStream(cachedFile)) {
+            stream.write(new byte[100]);
+        }
+        ByteBuffer result = cache.getBytes("key");
+
+        assertEquals(99, result.get(99));
+    }
+
+    @Test
+    public void getBytes_memoryCacheInvalidatedOnPut() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setMemoryCacheSize(512, 128);
+        cache.put("key", createTempFile(100, ".txt"));
+        cache.getBytes("key");
+
+        cache.put("key", createTempFile(50, ".txt"));
+        ByteBuffer result = cache.getBytes("key");
+
+        assertEquals(50, result.remaining());
+    }
+
+    @Test
+    public void getBytes_memoryCacheInvalidatedOnDelete() throws IOException, RecordNotFoundException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setMemoryCacheSize(512, 128);
+        cache.put("key", createTempFile(100, ".txt"));
+        cache.getBytes("key");
+
+        cache.delete("key");
+
+        assertNull(cache.getBytes("key"));
+    }
+
+    // ==================== Deduplication tests ====================
+
+    @Test
+    public void deduplication_identicalFiles_storedOnce() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setDeduplicationEnabled(true);
+
+        File cachedFile1 = cache.put("key1", createTempFile(100, ".txt"));
+        File cachedFile2 = cache.put("key2", createTempFile(100, ".txt"));
+
+        assertEquals(cachedFile1, cachedFile2);
+        assertEquals(100, cache.getUsedSpace());
+        assertEquals(2, cache.keySet().size());
+    }
+
+    @Test
+    public void deduplication_sharedFileKeptUntilLastKeyDeleted()
+            throws IOException, RecordNotFoundException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setDeduplicationEnabled(true);
+        File cachedFile = cache.put("key1", createTempFile(100, ".txt"));
+        cache.put("key2", createTempFile(100, ".txt"));
+
+        cache.delete("key1");
+
+        assertTrue(cachedFile.exists());
+        assertEquals(100, cache.getUsedSpace());
+        assertNotNull(cache.get("key2"));
+
+        cache.delete("key2");
+
+        assertFalse(cachedFile.exists());
+        assertEquals(0, cache.getUsedSpace());
+    }
+
+    @Test
+    public void deduplication_identicalBytes_storedOnce() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setDeduplicationEnabled(true);
+
+        cache.putBytes("key1", ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        cache.putBytes("key2", ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        cache.putBytes("key3", ByteBuffer.wrap(new byte[]{3, 2, 1}));
+
+        assertEquals(6, cache.getUsedSpace());
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3}), cache.getBytes("key2"));
+    }
+
+    @Test
+    public void persistence_sharedFileAccountedOnceAfterReopen() throws IOException {
+        DiskLruCache cache1 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache1.setDeduplicationEnabled(true);
+        cache1.put("key1", createTempFile(100, ".txt"));
+        cache1.put("key2", createTempFile(100, ".txt"));
+
+        DiskLruCache cache2 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        assertEquals(100, cache2.getUsedSpace());
+    }
+
+    // ==================== Namespace tests ====================
+
+    @Test
+    public void namespace_keysAreIsolated() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        CacheNamespace images = cache.namespace("images");
+        cache.put("key1", createTempFile(100, ".txt"));
+        images.put("key1", createTempFile(150, ".txt"));
+
+        assertEquals(Collections.singleton("key1"), cache.keySet());
+        assertEquals(Collections.singleton("key1"), images.keySet());
+        assertEquals(100, cache.get("key1").length());
+        assertEquals(150, images.get("key1").length());
+        assertEquals(150, images.getUsedSpace());
+        assertEquals(250, cache.getUsedSpace());
+    }
+
+    @Test
+    public void namespace_clear_keepsOtherNamespaces() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        CacheNamespace images = cache.namespace("images");
+        CacheNamespace thumbs = cache.namespace("thumbs");
+        images.put("key1", createTempFile(100, ".txt"));
+        images.put("key2", createTempFile(100, ".txt"));
+        thumbs.put("key1", createTempFile(50, ".txt"));
+
+        assertEquals(2, images.clear());
+
+        assertTrue(images.keySet().isEmpty());
+        assertNotNull(thumbs.get("key1"));
+        assertEquals(50, cache.getUsedSpace());
+    }
+
+    @Test
+    public void namespace_persistedInJournal() throws IOException {
+        DiskLruCache cache1 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache1.namespace("images").put("key1", createTempFile(100, ".txt"));
+
+        DiskLruCache cache2 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        assertNotNull(cache2.namespace("images").get("key1"));
+        assertTrue(cache2.keySet().isEmpty());
+        RecordInfo info = cache2.getRecordsInfo().get(0);
+        assertEquals("key1", info.getKey());
+        assertEquals("images", info.getNamespace());
+    }
+
+    @Test
+    public void namespace_weight_evictsOverusedNamespace() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        CacheNamespace small = cache.namespace("small");
+        CacheNamespace large = cache.namespace("large");
+        large.setWeight(1);
+        small.put("key1", createTempFile(200, ".txt"));
+        small.put("key2", createTempFile(200, ".txt"));
+        for (int c = 0; c < 4; c++) {
+            large.put("key" + c, createTempFile(200, ".txt"));
+        }
+
+        assertEquals(2, small.keySet().size());
+        assertEquals(3, large.keySet().size());
+    }
+
+    @Test
+    public void namespace_quota_evictsNamespaceOverQuota() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        CacheNamespace limited = cache.namespace("limited");
+        limited.setQuota(200);
+        limited.put("key1", createTempFile(200, ".txt"));
+        limited.put("key2", createTempFile(200, ".txt"));
+        cache.put("key1", createTempFile(400, ".txt"));
+        cache.put("key2", createTempFile(400, ".txt"));
+
+        assertEquals(1, limited.keySet().size());
+        assertEquals(2, cache.keySet().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void namespace_emptyName_throwsException() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.namespace("");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void namespace_keyWithSeparator_throwsException() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.namespace("media").putBytes("a\u0000b", ByteBuffer.wrap(new byte[10]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void put_keyWithLeadingNamespaceSeparator_throwsException() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.putBytes("\u0000key", ByteBuffer.wrap(new byte[10]));
+    }
+
+    // ==================== Priority tests ====================
+
+    @Test
+    public void priority_pinnedNamespaceOverShare_otherNamespaceEvicted() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 1000);
+        cache.put("offline", createTempFile(450, ".txt"), Priority.PINNED);
+        CacheNamespace media = cache.namespace("media");
+        media.setWeight(1);
+
+        media.put("a", createTempFile(200, ".txt"));
+        media.put("b", createTempFile(200, ".txt"));
+        media.put("c", createTempFile(200, ".txt"));
+
+        assertNotNull(cache.get("offline"));
+        assertEquals(new HashSet<>(Arrays.asList("b", "c")), media.keySet());
+    }
+
+    @Test
+    public void priority_pinnedFileNotEvicted() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.put("pinned", createTempFile(400, ".txt"), Priority.PINNED);
+        cache.put("key1", createTempFile(400, ".txt"));
+
+        cache.put("key2", createTempFile(400, ".txt"));
+
+        assertNotNull(cache.get("pinned"));
+        assertNull(cache.get("key1"));
+        assertEquals(400, cache.getPinnedSize());
+    }
+
+    @Test
+    public void priority_pinnedSizeLimitExceeded_throwsException() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setPinnedSizeLimit(500);
+        cache.put("pinned", createTempFile(400, ".txt"), Priority.PINNED);
+
+        try {
+            cache.put("key1", createTempFile(200, ".txt"), Priority.PINNED);
+            fail("Expected IOException for pinned size limit");
+        } catch (IOException ignored) {
+        }
+        assertNull(cache.get("key1"));
+        assertEquals(400, cache.getUsedSpace());
+    }
+
+    @Test
+    public void priority_pinnedDuplicateOverLimit_throwsException() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setDeduplicationEnabled(true);
+        cache.setPinnedSizeLimit(150);
+        cache.put("key1", createTempFile(100, ".txt"), Priority.PINNED);
+
+        try {
+            cache.put("key2", createTempFile(100, ".txt"), Priority.PINNED);
+            fail("Expected IOException for pinned size limit");
+        } catch (IOException ignored) {
+        }
+        assertNull(cache.get("key2"));
+        assertEquals(100, cache.getPinnedSize());
+    }
+
+    @Test
+    public void priority_setPriority_unpinnedFileEvicted() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.put("key1", createTempFile(400, ".txt"), Priority.PINNED);
+        cache.put("key2", createTempFile(400, ".txt"));
+
+        cache.setPriority("key1", Priority.LOW);
+        cache.put("key3", createTempFile(400, ".txt"));
+
+        assertNull(cache.get("key1"));
+        assertNotNull(cache.get("key2"));
+        assertEquals(Priority.NORMAL, cache.getRecordInfo("key2").getPriority());
+    }
+
+    @Test
+    public void priority_trimToSize_keepsPinnedFiles() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.put("pinned", createTempFile(400, ".txt"), Priority.PINNED);
+        cache.put("key1", createTempFile(200, ".txt"));
+
+        cache.trimToSize(0);
+
+        assertEquals(Collections.singleton("pinned"), cache.keySet());
+    }
+
+    // ==================== Positional read tests ====================
+
+    @Test
+    public void read_rangeOfFile_returnsContents() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.put("key1", createTempFile(300, ".txt"));
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+
+        int read = cache.read("key1", 260, buffer);
+
+        assertEquals(10, read);
+        assertEquals(4, buffer.get(0));
+        assertEquals(-1, cache.read("key1", 300, ByteBuffer.allocate(10)));
+    }
+
+    @Test
+    public void read_replacedFile_returnsNewContents() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.put("key1", createTempFile(300, ".txt"));
+        cache.read("key1", 0, ByteBuffer.allocate(10));
+
+        cache.put("key1", createTempFile(50, ".txt"));
+        int read = cache.read("key1", 45, ByteBuffer.allocate(10));
+
+        assertEquals(5, read);
+    }
+
+    @Test
+    public void transferTo_rangeOfFile_transfersContents() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.put("key1", createTempFile(300, ".txt"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        long transferred = cache.transferTo("key1", 250, 100, Channels.newChannel(output));
+
+        assertEquals(50, transferred);
+        assertEquals(250, output.toByteArray()[0] & 0xff);
+    }
+
+    @Test
+    public void openChannel_fileEvicted_handleStillReadable() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.put("key1", createTempFile(300, ".txt"));
+        CachedChannel channel = cache.openChannel("key1");
+
+        cache.delete("key1");
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+        int read = channel.read(buffer, 5);
+        channel.close();
+
+        assertEquals(10, read);
+        assertEquals(5, buffer.get(0));
+        assertNull(cache.openChannel("key1"));
+    }
+
+    @Test(expected = RecordNotFoundException.class)
+    public void read_missingKey_throwsException() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        cache.read("key1", 0, ByteBuffer.allocate(10));
+    }
+
+    @Test(expected = IOException.class)
+    public void read_encodedContents_throwsException() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setCodec(new DeflateCodec());
+        cache.putBytes("key1", ByteBuffer.wrap(new byte[500]));
+
+        cache.read("key1", 0, ByteBuffer.allocate(10));
+    }
+
+    // ==================== Packed storage tests ====================
+
+    @Test
+    public void packed_smallContents_storedInSegment() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setPackedStorage(100);
+
+        for (int c = 0; c < 5; c++) {
+            assertNull(cache.putBytes("key" + c, ByteBuffer.wrap(filledArray(50, c))));
+        }
+
+        assertEquals(2, listCacheDir().size());
+        assertEquals(250, cache.getUsedSpace());
+        assertEquals(3, cache.getBytes("key3").get(0));
+        assertEquals(50, cache.getRecordInfo("key3").getSize());
+    }
+
+    @Test
+    public void packed_contentsRestoredAfterReopen() throws Exception {
+        DiskLruCache cache1 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache1.setPackedStorage(100);
+        cache1.putBytes("key1", ByteBuffer.wrap(filledArray(50, 1)));
+        cache1.putBytes("key2", ByteBuffer.wrap(filledArray(50, 2)));
+
+        DiskLruCache cache2 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache2.setPackedStorage(100);
+        cache2.putBytes("key3", ByteBuffer.wrap(filledArray(50, 3)));
+
+        assertEquals(2, cache2.getBytes("key2").get(49));
+        assertEquals(3, cache2.getBytes("key3").get(0));
+        assertEquals(150, cache2.getUsedSpace());
+    }
+
+    @Test
+    public void packed_allContentsDeleted_segmentDeleted() throws Exception {
+        DiskLruCache cache1 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache1.setPackedStorage(100);
+        cache1.putBytes("key1", ByteBuffer.wrap(new byte[50]));
+        cache1.putBytes("key2", ByteBuffer.wrap(new byte[50]));
+        DiskLruCache cache2 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        cache2.clearCache();
+
+        assertEquals(Collections.singletonList("journal.bin"), listCacheDir());
+    }
+
+    @Test
+    public void packed_sparseSegment_compacted() throws Exception {
+        DiskLruCache cache1 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache1.setPackedStorage(100);
+        for (int c = 0; c < 4; c++) {
+            cache1.putBytes("key" + c, ByteBuffer.wrap(filledArray(50, c)));
+        }
+        DiskLruCache cache2 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache2.setPackedStorage(100);
+        cache2.deleteAll(Arrays.asList("key0", "key1", "key2"));
+
+        cache2.putBytes("key4", ByteBuffer.wrap(filledArray(50, 4)));
+
+        assertEquals(2, listCacheDir().size());
+        assertEquals(3, cache2.getBytes("key3").get(0));
+        assertEquals(4, cache2.getBytes("key4").get(0));
+        DiskLruCache cache3 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        assertEquals(3, cache3.getBytes("key3").get(0));
+    }
+
+    @Test
+    public void packed_sparseSegmentWithReplacedEntry_latestContentsCompacted() throws Exception {
+        DiskLruCache cache1 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache1.setPackedStorage(100);
+        for (int c = 0; c < 4; c++) {
+            cache1.putBytes("key" + c, ByteBuffer.wrap(filledArray(20, c)));
+        }
+        cache1.putBytes("key0", ByteBuffer.wrap(filledArray(20, 5)));
+        DiskLruCache cache2 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache2.setPackedStorage(100);
+        cache2.setDurability(Durability.NONE, 0);
+        cache2.deleteAll(Arrays.asList("key1", "key2", "key3"));
+
+        cache2.putBytes("key4", ByteBuffer.wrap(filledArray(20, 4)));
+
+        assertEquals(2, listCacheDir().size());
+        assertEquals(40, cache2.getUsedSpace());
+        assertEquals(5, cache2.getBytes("key0").get(0));
+        DiskLruCache cache3 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        assertEquals(5, cache3.getBytes("key0").get(19));
+        assertEquals(4, cache3.getBytes("key4").get(0));
+    }
+
+    @Test
+    public void packed_get_contentsUnpackedToFile() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setPackedStorage(100);
+        cache.putBytes("key1", ByteBuffer.wrap(filledArray(50, 7)));
+
+        File file = cache.get("key1");
+
+        assertNotNull(file);
+        assertEquals(50, file.length());
+        assertEquals(7, cache.getBytes("key1").get(0));
+        assertEquals(50, cache.getUsedSpace());
+    }
+
+    @Test
+    public void packed_readByPosition_boundedByEntry() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setPackedStorage(100);
+        cache.putBytes("key1", ByteBuffer.wrap(filledArray(50, 1)));
+        cache.putBytes("key2", ByteBuffer.wrap(filledArray(50, 2)));
+        ByteBuffer buffer = ByteBuffer.allocate(100);
+
+        int read = cache.read("key2", 40, buffer);
+
+        assertEquals(10, read);
+        assertEquals(2, buffer.get(0));
+    }
+
+    // ==================== Close tests ====================
+
+    @Test
+    public void close_descriptorsReleased() throws Exception {
+        File descriptors = new File("/proc/self/fd");
+        assumeTrue(descriptors.isDirectory());
+        int count = descriptors.list().length;
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setPackedStorage(100);
+        cache.putBytes("key1", ByteBuffer.wrap(new byte[10]));
+        cache.putBytes("key2", ByteBuffer.wrap(new byte[200]));
+        cache.read("key1", 0, ByteBuffer.allocate(10));
+        cache.read("key2", 0, ByteBuffer.allocate(10));
+
+        cache.close();
+
+        assertEquals(count, descriptors.list().length);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void close_furtherUseRejected() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.putBytes("key1", ByteBuffer.wrap(new byte[10]));
+
+        cache.close();
+
+        cache.get("missing");
+    }
+
+    // ==================== Durability tests ====================
+
+    @Test
+    public void durability_onCommit_journalReplacedAtomically() throws Exception {
+        DiskLruCache cache1 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache1.setDurability(Durability.ON_COMMIT, 0);
+        cache1.put("key1", createTempFile(100, ".txt"));
+        cache1.putBytes("key2", ByteBuffer.wrap(new byte[50]));
+
+        DiskLruCache cache2 = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        assertEquals(150, cache2.getUsedSpace());
+        assertFalse(listCacheDir().contains("journal.bin" + DiskLruCache.TEMP_SUFFIX));
+    }
+
+    @Test
+    public void durability_batched_flushedInBackground() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setDurability(Durability.BATCHED, 200);
+        cache.setPackedStorage(100);
+        cache.put("key1", createTempFile(100, ".txt"));
+        cache.putBytes("key2", ByteBuffer.wrap(new byte[50]));
+        File journalFile = new File(cacheDir, "journal.bin");
+        // Only background flush writes journal again
+        assertTrue(journalFile.delete());
+
+        for (int c = 0; c < 100 && !journalFile.exists(); c++) {
+            Thread.sleep(20);
+        }
+
+        assertTrue(journalFile.exists());
+        assertEquals(Durability.BATCHED, cache.getDurability());
+        assertEquals(150, DiskLruCache.create(cacheDir, CACHE_SIZE).getUsedSpace());
+        assertFalse(listCacheDir().contains("journal.bin" + DiskLruCache.TEMP_SUFFIX));
+    }
+
+    @Test
+    public void durability_batchedDisabled_pendingChangesFlushed() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setDurability(Durability.BATCHED, 60000);
+        cache.put("key1", createTempFile(100, ".txt"));
+
+        cache.setDurability(Durability.NONE, 0);
+
+        assertEquals(100, DiskLruCache.create(cacheDir, CACHE_SIZE).getUsedSpace());
+    }
+
+    @Test
+    public void durability_batchedClosed_timerStoppedAndChangesFlushed() throws Exception {
+        int threads = countSyncThreads();
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setDurability(Durability.BATCHED, 60000);
+        cache.put("key1", createTempFile(100, ".txt"));
+        File journalFile = new File(cacheDir, "journal.bin");
+        assertTrue(journalFile.delete());
+
+        cache.close();
+        for (int c = 0; c < 100 && countSyncThreads() > threads; c++) {
+            Thread.sleep(20);
+        }
+
+        assertTrue(journalFile.exists());
+        assertEquals(threads, countSyncThreads());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void durability_batchedWithoutInterval_throwsException() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        cache.setDurability(Durability.BATCHED, 0);
+    }
+
+    // ==================== Prefix query tests ====================
+
+    @Test
+    public void keysWithPrefix_onlyMatchingKeysReturnedInOrder() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.putBytes("user/2/a", ByteBuffer.wrap(new byte[10]));
+        cache.putBytes("user/1/b", ByteBuffer.wrap(new byte[10]));
+        cache.putBytes("user/12/c", ByteBuffer.wrap(new byte[10]));
+        cache.putBytes("user/1/a", ByteBuffer.wrap(new byte[10]));
+        cache.putChunk("user/1/video", 0, ByteBuffer.wrap(new byte[10]));
+        cache.namespace("user").putBytes("user/1/x", ByteBuffer.wrap(new byte[10]));
+
+        Set<String> keys = cache.keysWithPrefix("user/1/");
+
+        assertEquals(Arrays.asList("user/1/a", "user/1/b"), new ArrayList<>(keys));
+        assertEquals(Collections.singleton("user/1/x"), cache.namespace("user").keysWithPrefix("user/1/"));
+    }
+
+    @Test
+    public void deleteByPrefix_matchingKeysAndChunksDeletedInBatches() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 100000);
+        int count = DiskLruCache.EVICTION_BATCH_SIZE * 2 + 1;
+        for (int c = 0; c < count; c++) {
+            cache.putBytes("user/1/" + c, ByteBuffer.wrap(new byte[10]));
+        }
+        cache.putChunk("user/1/video", 0, ByteBuffer.wrap(new byte[10]));
+        cache.putBytes("user/2/a", ByteBuffer.wrap(new byte[10]));
+
+        assertEquals(count + 1, cache.deleteByPrefix("user/1/"));
+
+        assertEquals(Collections.singleton("user/2/a"), cache.keySet());
+        assertTrue(cache.getChunkOffsets("user/1/video").isEmpty());
+        assertEquals(10, cache.getUsedSpace());
+    }
+
+    @Test
+    public void deleteByPrefix_namespace_otherNamespacesKept() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        CacheNamespace images = cache.namespace("images");
+        images.putBytes("user/1/a", ByteBuffer.wrap(new byte[10]));
+        cache.namespace("thumbs").putBytes("user/1/a", ByteBuffer.wrap(new byte[10]));
+        cache.putBytes("user/1/a", ByteBuffer.wrap(new byte[10]));
+
+        assertEquals(1, images.deleteByPrefix("user/"));
+
+        assertTrue(images.keySet().isEmpty());
+        assertEquals(Collections.singleton("user/1/a"), cache.namespace("thumbs").keySet());
+        assertEquals(Collections.singleton("user/1/a"), cache.keySet());
+    }
+
+    @Test
+    public void keyIterator_keysFetchedInBatches() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 100000);
+        int count = DiskLruCache.ITERATION_BATCH_SIZE + 10;
+        List<String> expected = new ArrayList<>();
+        for (int c = 0; c < count; c++) {
+            String key = String.format("key/%04d", c);
+            cache.putBytes(key, ByteBuffer.wrap(new byte[1]));
+            expected.add(key);
+        }
+        cache.putBytes("other", ByteBuffer.wrap(new byte[1]));
+
+        List<String> keys = new ArrayList<>();
+        Iterator<String> iterator = cache.keyIterator("key/");
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            keys.add(key);
+            // Deletion of returned keys doesn't break iteration
+            cache.delete(key);
+        }
+
+        assertEquals(expected, keys);
+        assertEquals(Collections.singleton("other"), cache.keySet());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keysWithPrefix_nullPrefix_throwsException() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        cache.keysWithPrefix(null);
+    }
+
+    // ==================== Record paging tests ====================
+
+    @Test
+    public void getRecordsInfo_pagesFollowLruOrder() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        for (int c = 1; c <= 5; c++) {
+            cache.putBytes("key" + c, ByteBuffer.wrap(new byte[10]));
+        }
+        assertNotNull(cache.get("key2"));
+
+        List<String> keys = new ArrayList<>();
+        RecordInfo last = null;
+        List<RecordInfo> page;
+        do {
+            page = cache.getRecordsInfo(last, 2);
+            for (RecordInfo info : page) {
+                keys.add(info.getKey());
+                last = info;
+            }
+        } while (page.size() == 2);
+
+        assertEquals(Arrays.asList("key2", "key5", "key4", "key3", "key1"), keys);
+    }
+
+    @Test
+    public void recordIterator_recordsFetchedInPages() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 100000);
+        int count = DiskLruCache.ITERATION_BATCH_SIZE + 10;
+        for (int c = 0; c < count; c++) {
+            cache.putBytes("key" + c, ByteBuffer.wrap(new byte[1]));
+        }
+
+        List<String> keys = new ArrayList<>();
+        Iterator<RecordInfo> iterator = cache.recordIterator();
+        while (iterator.hasNext()) {
+            String key = iterator.next().getKey();
+            keys.add(key);
+            // Accessed records move ahead of iteration and are not returned again
+            assertNotNull(cache.get(key));
+        }
+
+        assertEquals(count, keys.size());
+        assertEquals("key" + (count - 1), keys.get(0));
+        assertEquals("key0", keys.get(count - 1));
+    }
+
+    @Test
+    public void put_sameTime_evictedInOrderOfPut() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 100);
+        for (int c = 0; c < 20; c++) {
+            cache.putBytes("key" + c, ByteBuffer.wrap(new byte[10]));
+        }
+
+        DiskLruCache reopened = DiskLruCache.create(cacheDir, 100);
+        reopened.putBytes("key20", ByteBuffer.wrap(new byte[10]));
+
+        assertEquals(10, reopened.keySet().size());
+        assertNull(reopened.get("key10"));
+        assertNotNull(reopened.get("key11"));
+    }
+
+    // ==================== Negative lookup tests ====================
+
+    @Test
+    public void get_absentKey_answeredWhileCacheLocked() throws Exception {
+        final DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        final CountDownLatch encoding = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        cache.setCodec(new DeflateCodec() {
+            @Override
+            public OutputStream encode(OutputStream stream) {
+                encoding.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.encode(stream);
+            }
+        });
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cache.putBytes("key1", ByteBuffer.wrap(new byte[100]));
+                } catch (IOException ignored) {
+                }
+            }
+        });
+        writer.start();
+        encoding.await();
+
+        assertNull(cache.get("absent"));
+        assertNull(cache.getBytes("absent"));
+
+        release.countDown();
+        writer.join();
+        assertNotNull(cache.getBytes("key1"));
+    }
+
+    @Test
+    public void get_manyKeysPutAndDeleted_presentKeysFound() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 100000);
+        for (int c = 0; c < 200; c++) {
+            cache.putBytes("key" + c, ByteBuffer.wrap(new byte[10]));
+        }
+        for (int c = 0; c < 150; c++) {
+            cache.delete("key" + c);
+        }
+
+        DiskLruCache reopened = DiskLruCache.create(cacheDir, 100000);
+
+        for (int c = 0; c < 200; c++) {
+            assertEquals(c >= 150, cache.get("key" + c) != null);
+            assertEquals(c >= 150, reopened.get("key" + c) != null);
+        }
+    }
+
+    // ==================== Checksum tests ====================
+
+    @Test
+    public void checksum_corruptedFile_treatedAsMiss() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setChecksumEnabled(true);
+        File file = cache.put("key1", createTempFile(100, ".txt"));
+        corrupt(file, 10);
+
+        assertNull(cache.get("key1"));
+
+        assertFalse(file.exists());
+        assertTrue(cache.keySet().isEmpty());
+        assertEquals(0, cache.getUsedSpace());
+    }
+
+    @Test
+    public void checksum_corruptedFileAfterReopen_treatedAsMiss() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setChecksumEnabled(true);
+        cache.putBytes("key1", ByteBuffer.wrap(filledArray(100, 1)));
+        corrupt(cache.get("key1"), 99);
+
+        DiskLruCache reopened = DiskLruCache.create(cacheDir, CACHE_SIZE);
+
+        assertNull(reopened.getBytes("key1"));
+        assertNull(reopened.openStream("key1"));
+    }
+
+    @Test
+    public void checksum_truncatedFile_treatedAsMissWithoutChecksum() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        File file = cache.put("key1", createTempFile(100, ".txt"));
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(50);
+        }
+
+        assertNull(cache.openChannel("key1"));
+        assertTrue(cache.keySet().isEmpty());
+    }
+
+    @Test
+    public void checksum_corruptedPackedEntry_treatedAsMiss() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setChecksumEnabled(true);
+        cache.setPackedStorage(100);
+        cache.putBytes("key1", ByteBuffer.wrap(filledArray(50, 1)));
+        cache.putBytes("key2", ByteBuffer.wrap(filledArray(50, 2)));
+        corrupt(new File(cacheDir, "segment-1"), 60);
+
+        assertEquals(1, cache.getBytes("key1").get(0));
+        assertNull(cache.getBytes("key2"));
+        assertEquals(Collections.singleton("key1"), cache.keySet());
+    }
+
+    @Test
+    public void scrub_verifiedFilesRechecked() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setChecksumEnabled(true);
+        QueueExecutor executor = new QueueExecutor();
+        final List<RemovalNotification> notifications = new ArrayList<>();
+        cache.setRemovalListener(new RemovalListener() {
+            @Override
+            public void onRemoval(List<RemovalNotification> batch) {
+                notifications.addAll(batch);
+            }
+        }, executor);
+        File file1 = cache.put("key1", createTempFile(100, ".txt"));
+        File file2 = cache.put("key2", createTempFile(100, ".txt"));
+        assertNotNull(cache.get("key1"));
+        assertNotNull(cache.get("key2"));
+        corrupt(file1, 0);
+
+        assertEquals(1, cache.scrub());
+        executor.runAll();
+
+        assertEquals(Collections.singleton("key2"), cache.keySet());
+        assertTrue(file2.exists());
+        assertEquals(1, notifications.size());
+        assertEquals(RemovalCause.CORRUPTED, notifications.get(0).getCause());
+    }
+
+    @Test
+    public void removalListener_removalDuringDelivery_deliveredAfterBatch() throws Exception {
+        final DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        final List<String> events = new ArrayList<>();
+        cache.setRemovalListener(new RemovalListener() {
+            @Override
+            public void onRemoval(List<RemovalNotification> batch) {
+                String key = batch.get(0).getKey();
+                events.add("start " + key);
+                if (key.equals("key1")) {
+                    try {
+                        cache.delete("key2");
+                    } catch (Exception ex) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+                events.add("end " + key);
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        cache.put("key1", createTempFile(100, ".txt"));
+        cache.put("key2", createTempFile(100, ".txt"));
+
+        cache.delete("key1");
+
+        assertEquals(Arrays.asList("start key1", "end key1", "start key2", "end key2"), events);
+    }
+
+    // ==================== Chunked entry tests ====================
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putBytes_keyWithChunkSeparator_throwsException() throws IOException {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.putBytes("video\u00010", ByteBuffer.wrap(new byte[10]));
+    }
+
+    @Test
+    public void putChunk_chunksReadAcrossBoundary() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setChunkSize(100);
+        cache.putChunk("video", 0, ByteBuffer.wrap(filledArray(100, 1)));
+        cache.putChunk("video", 100, ByteBuffer.wrap(filledArray(50, 2)));
+        ByteBuffer buffer = ByteBuffer.allocate(30);
+
+        int read1 = cache.readChunked("video", 90, buffer);
+        int read2 = cache.readChunked("video", 90 + read1, buffer);
+
+        assertEquals(10, read1);
+        assertEquals(20, read2);
+        assertEquals(1, buffer.get(9));
+        assertEquals(2, buffer.get(10));
+        assertEquals(-1, cache.readChunked("video", 150, buffer));
+    }
+
+    @Test
+    public void putChunk_infoAndRemovalReportEntryKeyAndOffset() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        QueueExecutor executor = new QueueExecutor();
+        final List<RemovalNotification> notifications = new ArrayList<>();
+        cache.setRemovalListener(new RemovalListener() {
+            @Override
+            public void onRemoval(List<RemovalNotification> batch) {
+                notifications.addAll(batch);
+            }
+        }, executor);
+        cache.setChunkSize(100);
+        cache.putChunk("video", 100, ByteBuffer.wrap(new byte[50]));
+
+        RecordInfo info = cache.getRecordsInfo().get(0);
+        cache.deleteChunks("video");
+        executor.runAll();
+
+        assertEquals("video", info.getKey());
+        assertEquals(100, info.getChunkOffset());
+        assertEquals("video", notifications.get(0).getKey());
+        assertEquals(100, notifications.get(0).getChunkOffset());
+    }
+
+    @Test
+    public void putChunk_chunksEvictedIndependently() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, 300);
+        cache.setChunkSize(100);
+        for (int c = 0; c < 5; c++) {
+            if (c > 0) {
+                // Head of entry stays hot
+                Thread.sleep(2);
+                cache.readChunked("video", 0, ByteBuffer.allocate(1));
+            }
+            Thread.sleep(2);
+            cache.putChunk("video", c * 100, ByteBuffer.wrap(new byte[100]));
+        }
+
+        assertEquals(new TreeSet<>(Arrays.asList(0L, 300L, 400L)), cache.getChunkOffsets("video"));
+        assertEquals(-1, cache.readChunked("video", 150, ByteBuffer.allocate(10)));
+        assertTrue(cache.keySet().isEmpty());
+    }
+
+    @Test
+    public void deleteChunks_allChunksDeleted() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setChunkSize(100);
+        cache.putChunk("video", 0, ByteBuffer.wrap(new byte[100]));
+        cache.putChunk("video", 100, ByteBuffer.wrap(new byte[100]));
+        cache.put("video", createTempFile(100, ".txt"));
+
+        assertEquals(2, cache.deleteChunks("video"));
+
+        assertTrue(cache.getChunkOffsets("video").isEmpty());
+        assertEquals(100, cache.getUsedSpace());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putChunk_unalignedOffset_throwsException() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        cache.setChunkSize(100);
+
+        cache.putChunk("video", 50, ByteBuffer.wrap(new byte[10]));
+    }
+
+    // ==================== Removal listener tests ====================
+
+    @Test
+    public void removalListener_causesReportedInBatch() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        QueueExecutor executor = new QueueExecutor();
+        final List<RemovalNotification> notifications = new ArrayList<>();
+        cache.setRemovalListener(new RemovalListener() {
+            @Override
+            public void onRemoval(List<RemovalNotification> batch) {
+                notifications.addAll(batch);
+            }
+        }, executor);
+        cache.put("key1", createTempFile(400, ".txt"));
+        cache.put("key1", createTempFile(400, ".txt"));
+        cache.put("key2", createTempFile(400, ".txt"));
+        cache.put("key3", createTempFile(400, ".txt"));
+        cache.delete("key3");
+
+        assertTrue(notifications.isEmpty());
+        assertEquals(1, executor.tasks.size());
+
+        executor.runAll();
+
+        assertEquals(3, notifications.size());
+        assertEquals(RemovalCause.REPLACED, notifications.get(0).getCause());
+        assertEquals(RemovalCause.EVICTED_SIZE, notifications.get(1).getCause());
+        assertEquals(RemovalCause.EXPLICIT, notifications.get(2).getCause());
+        assertEquals("key3", notifications.get(2).getKey());
+        assertEquals(400, notifications.get(2).getSize());
+    }
+
+    @Test
+    public void removalListener_missingFileReported() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        QueueExecutor executor = new QueueExecutor();
+        final List<RemovalNotification> notifications = new ArrayList<>();
+        cache.setRemovalListener(new RemovalListener() {
+            @Override
+            public void onRemoval(List<RemovalNotification> batch) {
+                notifications.addAll(batch);
+            }
+        }, executor);
+        File file = cache.put("key1", createTempFile(100, ".txt"));
+        assertTrue(file.delete());
+
+        assertNull(cache.get("key1"));
+        executor.runAll();
+
+        assertEquals(1, notifications.size());
+        assertEquals(RemovalCause.MISSING_FILE, notifications.get(0).getCause());
+    }
+
+    @Test
+    public void removalListener_failingListener_doesNotBreakCache() throws Exception {
+        DiskLruCache cache = DiskLruCache.create(cacheDir, CACHE_SIZE);
+        QueueExecutor executor = new QueueExecutor();
+        cache.setRemovalListener(new RemovalListener() {
+            @Override
+            public void onRemoval(List<RemovalNotification> batch) {
+                throw new IllegalStateException();
+            }
+        }, executor);
+        cache.put("key1", createTempFile(100, ".txt"));
+        cache.delete("key1");
+        executor.runAll();
+
+        cache.put("key2", createTempFile(100, ".txt"));
+        cache.delete("key2");
+
+        assertEquals(1, executor.tasks.size());
+    }
+
+    // ==================== Shared mode tests ====================
+
+    @Test
+    public void shared_operations_lockFileNotKeptOpen() throws IOException {
+        File descriptors = new File("/proc/self/fd");
+        assumeTrue(descriptors.isDirectory());
+        DiskLruCache cache = DiskLruCache.createShared(cacheDir, CACHE_SIZE);
+        cache.putBytes("key1", ByteBuffer.wrap(new byte[10]));
+        int count = descriptors.list().length;
+
+        for (int c = 0; c < 20; c++) {
+            DiskLruCache another = DiskLruCache.createShared(cacheDir, CACHE_SIZE);
+            another.getBytes("key1");
+        }
+
+        assertTrue(descriptors.list().length < count + 20);
+    }
+
+    @Test
+    public void shared_putVisibleToAnotherInstance() throws IOException {
+        DiskLruCache cache1 = DiskLruCache.createShared(cacheDir, CACHE_SIZE);
+        DiskLruCache cache2 = DiskLruCache.createShared(cacheDir, CACHE_SIZE);
+
+        cache1.put("key1", createTempFile(100, ".txt"));
+
+        assertNotNull(cache2.get("key1"));
+        assertEquals(100, cache2.getUsedSpace());
+    }
+
+    @Test
+    public void shared_get_generationNotChanged() throws IOException {
+        DiskLruCache cache1 = DiskLruCache.createShared(cacheDir, CACHE_SIZE);
+        DiskLruCache cache2 = DiskLruCache.createShared(cacheDir, CACHE_SIZE);
+        cache1.put("key1", createTempFile(100, ".txt"));
+        File lockFile = new File(cacheDir, "journal.bin" + DiskLruCache.LOCK_SUFFIX);
+        long generation = readGeneration(lockFile);
+
+        assertNotNull(cache1.get("key1"));
+        assertNotNull(cache2.get("key1"));
+
+        assertEquals(generation, readGeneration(lockFile));
+    }
+
+    @Test
+    public void shared_deleteVisibleToAnotherInstance() throws IOException, RecordNotFoundException {
+        DiskLruCache cache1 = DiskLruCache.createShared(cacheDir, CACHE_SIZE);
+        DiskLruCache cache2 = DiskLruCache.createShared(cacheDir, CACHE_SIZE);
+        cache1.put("key1", createTempFile(100, ".txt"));
+        cache2.put("key2", createTempFile(150, ".txt"));
+
+        cache2.delete("key1");
+
+        assertNull(cache1.get("key1"));
+        assertNotNull(cache1.get("key2"));
+        assertEquals(1, cache1.keySet().size());
+        assertEquals(150, cache1.getUsedSpace());
+    }
+
+    // ==================== Helper methods ====================
+
+    private static class QueueExecutor implements Executor {
+
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+
+    }
+
+    private List<String> listCacheDir() {
+        String[] names = cacheDir.list();
+        assertNotNull(names);
+        return Arrays.asList(names);
+    }
+
+    private static void corrupt(File file, long position) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(position);
+            int value = randomAccessFile.read();
+            randomAccessFile.seek(position);
+            randomAccessFile.write(value ^ 0xff);
+        }
+    }
+
+    private static byte[] filledArray(int size, int value) {
+        byte[] array = new byte[size];
+        Arrays.fill(array, (byte) value);
+        return array;
+    }
+
+    private static int countSyncThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("disk-lru-cache-sync") && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long readGeneration(File lockFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(lockFile, "r")) {
+            return file.readLong();
+        }
+    }
 
     private File createTempFile(int size, String extension) throws IOException {
         String name = randomString(8);
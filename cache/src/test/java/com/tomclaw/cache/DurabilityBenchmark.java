@@ -0,0 +1,58 @@
+package com.tomclaw.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Timing harness, that compares put and get latency with each durability policy.
+ * Run it with path of directory on device under test, results of tmpfs are meaningless.
+ */
+public class DurabilityBenchmark {
+
+    private static final int OPERATIONS = 500;
+    private static final int ENTRY_SIZE = 4 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        File root = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+        byte[] data = new byte[ENTRY_SIZE];
+        new Random(0).nextBytes(data);
+        System.out.println("policy      put, us   get, us");
+        for (Durability durability : Durability.values()) {
+            File dir = new File(root, "durability-" + durability.name().toLowerCase());
+            delete(dir);
+            DiskLruCache cache = DiskLruCache.create(dir, (long) OPERATIONS * ENTRY_SIZE * 2);
+            cache.setDurability(durability, durability == Durability.BATCHED ? 1000 : 0);
+
+            long start = System.nanoTime();
+            for (int c = 0; c < OPERATIONS; c++) {
+                cache.putBytes("key" + c, ByteBuffer.wrap(data));
+            }
+            long put = (System.nanoTime() - start) / OPERATIONS / 1000;
+
+            start = System.nanoTime();
+            for (int c = 0; c < OPERATIONS; c++) {
+                cache.getBytes("key" + c);
+            }
+            long get = (System.nanoTime() - start) / OPERATIONS / 1000;
+
+            cache.setDurability(Durability.NONE, 0);
+            System.out.printf("%-10s %8d %9d%n", durability, put, get);
+            delete(dir);
+        }
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.tomclaw.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileSyncUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void force_fileContentsKept() throws IOException {
+        File file = folder.newFile("file");
+
+        FileSync.force(file);
+
+        assertEquals(0, file.length());
+    }
+
+    @Test
+    public void syncDirectory_existingDirectory_flushed() {
+        assertTrue(FileSync.syncDirectory(folder.getRoot()));
+    }
+
+    @Test
+    public void syncDirectory_missingDirectory_skipped() {
+        assertFalse(FileSync.syncDirectory(new File(folder.getRoot(), "missing")));
+        assertFalse(FileSync.syncDirectory(null));
+    }
+
+}
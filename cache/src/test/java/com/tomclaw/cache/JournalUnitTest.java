@@ -9,6 +9,8 @@ import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
@@ -16,6 +18,7 @@ import static com.tomclaw.cache.Helpers.randomString;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -161,6 +164,66 @@ public class JournalUnitTest {
         assertNull(journal.get(record.getKey()));
     }
 
+    @Test
+    public void putRecordsWithSameName_sizeAccountedOnce() throws Exception {
+        long cacheSize = 300;
+        journal = createJournal();
+        File file = createRandomFile(100);
+        Record record1 = randomRecord(file, 1001);
+        Record record2 = randomRecord(file, 1002);
+
+        journal.put(record1, cacheSize);
+        journal.put(record2, cacheSize);
+
+        assertEquals(100, journal.getTotalSize());
+        assertTrue(journal.isReferenced(file.getName()));
+    }
+
+    @Test
+    public void evictSharedRecord_fileKeptWhileReferenced() throws Exception {
+        long cacheSize = 300;
+        journal = createJournal();
+        File file1 = createRandomFile(100);
+        File file2 = createRandomFile(200);
+        Record record1 = randomRecord(file1, 1001);
+        Record record2 = randomRecord(file1, 1003);
+        Record record3 = randomRecord(file2, 1002);
+        journal.put(record1, cacheSize);
+        journal.put(record2, cacheSize);
+        journal.put(record3, cacheSize);
+
+        File file3 = createRandomFile(100);
+        journal.put(randomRecord(file3, 1004), cacheSize);
+
+        assertNull(journal.get(record1.getKey()));
+        assertNull(journal.get(record3.getKey()));
+        assertTrue(file1.exists());
+        assertFalse(file2.exists());
+        assertEquals(200, journal.getTotalSize());
+    }
+
+    @Test
+    public void putRecords_maxCountExceeded_leastUsedRecordIsPurged() throws Exception {
+        long cacheSize = 1000;
+        journal = createJournal();
+        journal.setMaxCount(2);
+        File file1 = createRandomFile(100);
+        File file2 = createRandomFile(100);
+        File file3 = createRandomFile(100);
+        Record record1 = randomRecord(file1, 1001);
+        Record record2 = randomRecord(file2, 1002);
+        Record record3 = randomRecord(file3, 1003);
+
+        journal.put(record1, cacheSize);
+        journal.put(record2, cacheSize);
+        journal.put(record3, cacheSize);
+
+        assertEquals(2, journal.getCount());
+        assertNull(journal.get(record1.getKey()));
+        assertFalse(file1.exists());
+        assertEquals(200, journal.getTotalSize());
+    }
+
     @Test
     public void writeJournal_journalSizeIsCorrect() throws Exception {
         long cacheSize = 1000;
@@ -198,6 +261,157 @@ public class JournalUnitTest {
         assertEquals(record3, restored.get(record3.getKey()));
     }
 
+    @Test
+    public void writeAndParseJournal_codecRestored() throws Exception {
+        long cacheSize = 1000;
+        Journal original = Journal.readJournal(fileManager, logger);
+        File file = createRandomFile(100);
+        Record record = new Record(randomString(), file.getName(), 1001, file.length(), LzfCodec.ID);
+        original.put(record, cacheSize);
+
+        original.writeJournal();
+        Journal restored = Journal.readJournal(fileManager, logger);
+
+        assertEquals(LzfCodec.ID, restored.get(record.getKey()).getCodec());
+    }
+
+    @Test
+    public void writeAndParseJournal_priorityRestored() throws Exception {
+        long cacheSize = 1000;
+        Journal original = Journal.readJournal(fileManager, logger);
+        File file = createRandomFile(100);
+        Record record = new Record(randomString(), file.getName(), 1001, file.length(), Codec.RAW, Priority.PINNED);
+        original.put(record, cacheSize);
+
+        original.writeJournal();
+        Journal restored = Journal.readJournal(fileManager, logger);
+
+        assertEquals(Priority.PINNED, restored.get(record.getKey()).getPriority());
+        assertEquals(100, restored.getPinnedSize());
+    }
+
+    @Test
+    public void trim_batches_evictedByPriorityThenLru() throws Exception {
+        journal = createJournal();
+        journal.put(new Record("high1", createRandomFile(10).getName(), 1000, 10, Codec.RAW, Priority.HIGH), 1000);
+        journal.put(new Record("normal2", createRandomFile(10).getName(), 1002, 10), 1000);
+        journal.put(new Record("low", createRandomFile(10).getName(), 1003, 10, Codec.RAW, Priority.LOW), 1000);
+        journal.put(new Record("normal1", createRandomFile(10).getName(), 1001, 10), 1000);
+        journal.put(new Record("pinned", createRandomFile(10).getName(), 999, 10, Codec.RAW, Priority.PINNED), 1000);
+
+        List<Record> batch1 = journal.trim(0, 2);
+        List<Record> batch2 = journal.trim(0, 2);
+        List<Record> batch3 = journal.trim(0, 2);
+
+        assertEquals("low", batch1.get(0).getKey());
+        assertEquals("normal1", batch1.get(1).getKey());
+        assertEquals("normal2", batch2.get(0).getKey());
+        assertEquals("high1", batch2.get(1).getKey());
+        assertTrue(batch3.isEmpty());
+        assertEquals(10, journal.getTotalSize());
+    }
+
+    @Test
+    public void getRecordsWithPrefix_continuedAfterKey() throws Exception {
+        long cacheSize = 1000;
+        journal = createJournal();
+        for (String key : Arrays.asList("a/3", "b/1", "a/1", "a/2")) {
+            journal.put(new Record(key, createRandomFile(10).getName(), 1001, 10), cacheSize);
+        }
+
+        List<Record> page1 = journal.getRecordsWithPrefix("", "a/", null, 2);
+        List<Record> page2 = journal.getRecordsWithPrefix("", "a/", "a/2", 2);
+
+        assertEquals(2, page1.size());
+        assertEquals("a/1", page1.get(0).getKey());
+        assertEquals("a/2", page1.get(1).getKey());
+        assertEquals(1, page2.size());
+        assertEquals("a/3", page2.get(0).getKey());
+    }
+
+    @Test
+    public void getRecordsWithPrefix_defaultNamespace_namespacedKeysSkipped() throws Exception {
+        long cacheSize = 1000;
+        journal = createJournal();
+        for (String key : Arrays.asList("user", "user\u0000a", "user\u0000b", "users\u0000c", "user/1", "users")) {
+            journal.put(new Record(key, createRandomFile(10).getName(), 1001, 10), cacheSize);
+        }
+
+        List<Record> records = journal.getRecordsWithPrefix("", "user", null, Integer.MAX_VALUE);
+
+        assertEquals(3, records.size());
+        assertEquals("user", records.get(0).getKey());
+        assertEquals("user/1", records.get(1).getKey());
+        assertEquals("users", records.get(2).getKey());
+    }
+
+    @Test
+    public void getRecordsWithPrefix_evictedRecordsNotReturned() throws Exception {
+        long cacheSize = 250;
+        journal = createJournal();
+        journal.put(new Record("a/1", createRandomFile(100).getName(), 1001, 100), cacheSize);
+        journal.put(new Record("a/2", createRandomFile(100).getName(), 1002, 100), cacheSize);
+        journal.put(new Record("a/3", createRandomFile(100).getName(), 1003, 100), cacheSize);
+
+        List<Record> records = journal.getRecordsWithPrefix("", "a/", null, Integer.MAX_VALUE);
+
+        assertEquals(2, records.size());
+        assertEquals("a/2", records.get(0).getKey());
+    }
+
+    @Test
+    public void writeAndParseJournal_checksumRestored() throws Exception {
+        long cacheSize = 1000;
+        Journal original = Journal.readJournal(fileManager, logger);
+        File file = createRandomFile(100);
+        Record record = new Record(randomString(), file.getName(), 1001, file.length(),
+                Codec.RAW, Priority.NORMAL, 0xcafebabeL);
+        original.put(record, cacheSize);
+
+        original.writeJournal();
+        Journal restored = Journal.readJournal(fileManager, logger);
+
+        assertEquals(0xcafebabeL, restored.get(record.getKey()).getChecksum());
+    }
+
+    @Test
+    public void put_lowerPriorityEvictedFirst() throws Exception {
+        long cacheSize = 300;
+        Journal journal = Journal.readJournal(fileManager, logger);
+        File file1 = createRandomFile(100);
+        File file2 = createRandomFile(100);
+        File file3 = createRandomFile(100);
+        Record high = new Record("high", file1.getName(), 1001, 100, Codec.RAW, Priority.HIGH);
+        Record low = new Record("low", file2.getName(), 1002, 100, Codec.RAW, Priority.LOW);
+        Record pinned = new Record("pinned", file3.getName(), 1000, 100, Codec.RAW, Priority.PINNED);
+        journal.put(high, cacheSize);
+        journal.put(low, cacheSize);
+        journal.put(pinned, cacheSize);
+
+        List<Record> evicted = journal.put(randomRecord(createRandomFile(150), 1003), cacheSize);
+
+        assertEquals(Arrays.asList(low, high), evicted);
+        assertNotNull(journal.peek("pinned"));
+    }
+
+    @Test
+    public void putSequence_keptOnAccessChangedOnPut() throws Exception {
+        journal = createJournal();
+        File file = createRandomFile(100);
+        Record record = new Record("key", file.getName(), 1001, file.length());
+        journal.put(record, 1024);
+        Record put = journal.peek("key");
+
+        journal.get("key");
+        Record accessed = journal.peek("key");
+        journal.put(record, 1024);
+        Record putAgain = journal.peek("key");
+
+        assertEquals(put.getPutSequence(), accessed.getPutSequence());
+        assertNotEquals(put.getSequence(), accessed.getSequence());
+        assertNotEquals(put.getPutSequence(), putAgain.getPutSequence());
+    }
+
     private Record randomRecord(File file, long time) {
         String key = randomString();
         String name = file.getName();
@@ -0,0 +1,57 @@
+package com.tomclaw.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class MemoryCacheUnitTest {
+
+    @Test
+    public void put_entryAccessible() {
+        MemoryCache cache = new MemoryCache(100, 50);
+
+        cache.put("key", new byte[10]);
+
+        assertNotNull(cache.get("key"));
+        assertEquals(10, cache.getSize());
+    }
+
+    @Test
+    public void put_entryLargerThanLimit_notStored() {
+        MemoryCache cache = new MemoryCache(100, 50);
+
+        cache.put("key", new byte[60]);
+
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void put_budgetExceeded_leastRecentlyUsedDropped() {
+        MemoryCache cache = new MemoryCache(100, 50);
+        cache.put("key1", new byte[40]);
+        cache.put("key2", new byte[40]);
+        cache.get("key1");
+
+        cache.put("key3", new byte[40]);
+
+        assertNotNull(cache.get("key1"));
+        assertNull(cache.get("key2"));
+        assertNotNull(cache.get("key3"));
+        assertEquals(80, cache.getSize());
+    }
+
+    @Test
+    public void remove_sizeDecreased() {
+        MemoryCache cache = new MemoryCache(100, 50);
+        cache.put("key", new byte[40]);
+
+        cache.remove("key");
+
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.getSize());
+    }
+
+}